@@ -0,0 +1,84 @@
+import java.util.LinkedList;
+import java.util.Random;
+
+/***
+ * AidLookupBench - Times finding an anime by aid over the whole title dump, with the
+ * aid index of AnimeTitles and with the walk over a LinkedList it replaced.
+ *
+ * Usage: java AidLookupBench [anime]
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class AidLookupBench {
+	/*** CONSTANTS ***/
+	private static final int		RUNS		=	9;			// Timed runs of each lookup
+	private static final int		OLD_LOOKUPS	=	10;			// Lookups in a run of the list walk, each one is slow
+	private static final int		NEW_LOOKUPS	=	1000000;	// Lookups in a run of the index
+
+	public static void main(String[] args) throws Exception {
+		final AnimeTitles titles = DatabaseMgr.parseTitles(Bench.titlesXml(Bench.size(args, Bench.ANIME)), 1, Bench.filter());
+		final LinkedList<AnimeTitle> list = new LinkedList<AnimeTitle>();
+		final int[] aids = new int[NEW_LOOKUPS];
+		Random random = new Random(1);
+
+		for (int i = 0; i < titles.size(); i++)
+			list.add(titles.get(i));
+		for (int i = 0; i < aids.length; i++)
+			aids[i] = 1 + random.nextInt(titles.size() + 100);	// Some are not in the dump
+
+		System.out.println(titles.size() + " anime");
+
+		double old = Bench.time("LinkedList walk, " + OLD_LOOKUPS + " lookups", RUNS, new Bench.Task() {
+			@Override
+			public Object run() {
+				int found = 0;
+				for (int i = 0; i < OLD_LOOKUPS; i++) {
+					if (walk(list, aids[i]) != null)
+						found++;
+				}
+				return found;
+			}
+		}) / OLD_LOOKUPS;
+		double index = Bench.time("Aid index, " + NEW_LOOKUPS + " lookups", RUNS, new Bench.Task() {
+			@Override
+			public Object run() {
+				int found = 0;
+				for (int i = 0; i < NEW_LOOKUPS; i++) {
+					if (titles.searchTitles(aids[i]) != null)
+						found++;
+				}
+				return found;
+			}
+		}) / NEW_LOOKUPS;
+
+		System.out.printf("%-48s %12.3f us%n", "LinkedList walk, each", old * 1000);
+		System.out.printf("%-48s %12.3f us%n", "Aid index, each", index * 1000);
+	} // end main
+
+	// The lookup as it was, every entry is checked and get(i) walks the list each time
+	private static AnimeTitle walk(LinkedList<AnimeTitle> list, int aid) {
+		AnimeTitle result = null;
+
+		for (int i = 0; i < list.size(); i++) {
+			AnimeTitle temp = list.get(i);
+			if (temp.getID() == aid)
+				result = temp;
+		} // end for
+
+		return result;
+	} // end walk
+
+} // end class AidLookupBench
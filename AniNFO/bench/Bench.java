@@ -0,0 +1,239 @@
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+/***
+ * Bench - Timing and test data shared by the benchmarks. Each benchmark is a class
+ * with a main method, run with the classes in src and bench on the class path. A
+ * task is run a few times first so the JIT has compiled it, then the median of the
+ * timed runs is printed.
+ *
+ * The title dumps are made up rather than read from AniDB, so the numbers can be
+ * compared between machines. Unless given another size they have about as many
+ * anime as the real dump.
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class Bench {
+	/*** CONSTANTS ***/
+	public static final int			ANIME		=	13000;		// Anime in the title dump, about the size of the real one
+	private static final int		WARMUP		=	10;			// Untimed runs before timing
+	private static final long		SEED		=	20110101L;	// Seed for the made up data
+	private static final Charset	UTF8		=	Charset.forName("UTF-8");
+	private static final String[]	WORDS		=	{ "naruto", "bleach", "one", "piece", "shingeki", "no", "kyojin",
+		"ore", "imouto", "ga", "konna", "kawaii", "wake", "nai", "dragon", "ball", "sailor", "moon", "cowboy", "bebop",
+		"ghost", "in", "the", "shell", "mobile", "suit", "gundam", "seed", "destiny", "fullmetal", "alchemist",
+		"tengen", "toppa", "gurren", "lagann", "suzumiya", "haruhi", "yuuutsu", "Pok\u00E9mon", "\uFF21\uFF22\uFF23", "K\u00E4mpfer",
+		"movie", "special", "season", "2nd", "final", "chapter" };
+	private static final String[]	LANGS		=	{ "en", "ja", "de", "fr", "it", "es", "zh-Hans", "ko" };
+
+	/*** CLASS DATA MEMBERS ***/
+	private static volatile int		sink;			// Results are folded in here so they are not optimized away
+
+	/***
+	 * Work to be timed, returning its result so it is not optimized away.
+	 */
+	public interface Task {
+		Object run() throws Exception;
+	} // end interface Task
+
+	/***
+	 * Time a task and print the median.
+	 * @param name - What is being timed
+	 * @param runs - Timed runs
+	 * @param task - The task
+	 * @return The median time in ms
+	 * @throws Exception if the task failed
+	 */
+	public static double time(String name, int runs, Task task) throws Exception {
+		long[] times = new long[runs];
+
+		for (int i = 0; i < WARMUP; i++)
+			consume(task.run());
+
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			consume(task.run());
+			times[i] = System.nanoTime() - start;
+		} // end for
+
+		Arrays.sort(times);
+		double result = times[runs / 2] / 1e6;
+
+		System.out.printf("%-48s %12.3f ms%n", name, result);
+		return result;
+	} // end time
+
+	/***
+	 * Keep a result alive so the work that made it is not optimized away.
+	 * @param result - The result
+	 */
+	public static void consume(Object result) {
+		sink += System.identityHashCode(result);
+	} // end consume
+
+	/***
+	 * The size given on the command line.
+	 * @param args - Arguments of the benchmark
+	 * @param size - Size to use if none was given
+	 * @return The size
+	 */
+	public static int size(String[] args, int size) {
+		return (args.length > 0) ? Integer.parseInt(args[0]) : size;
+	} // end size
+
+	/***
+	 * A made up animetitles.xml dump.
+	 * @param anime - Number of anime in it
+	 * @return The uncompressed XML
+	 */
+	public static byte[] titlesXml(int anime) {
+		StringBuilder out = new StringBuilder(anime * 300);
+		Random random = new Random(SEED);
+
+		out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<animetitles>\n");
+		for (int aid = 1; aid <= anime; aid++) {
+			out.append("<anime aid=\"").append(aid).append("\">\n");
+			for (String[] title : titles(aid, random)) {
+				out.append("<title xml:lang=\"").append(title[1]).append("\" type=\"").append(title[0]).append("\">")
+						.append(title[2]).append("</title>\n");
+			}
+			out.append("</anime>\n");
+		} // end for
+		out.append("</animetitles>\n");
+
+		return out.toString().getBytes(UTF8);
+	} // end titlesXml
+
+	/***
+	 * The same made up dump as titlesXml, in the anime-titles.dat format.
+	 * @param anime - Number of anime in it
+	 * @return The uncompressed dump
+	 */
+	public static byte[] titlesDat(int anime) {
+		StringBuilder out = new StringBuilder(anime * 200);
+		Random random = new Random(SEED);
+
+		out.append("# created: Sat Jan  1 00:00:00 2011\n# <aid>|<type>|<language>|<title>\n");
+		out.append("# type: 1=primary title (one per anime), 2=synonyms (multiple per anime), 3=shorttitles (multiple per anime), 4=official title (one per language)\n");
+		for (int aid = 1; aid <= anime; aid++) {
+			for (String[] title : titles(aid, random))
+				out.append(aid).append('|').append(datType(title[0])).append('|').append(title[1]).append('|').append(title[2]).append('\n');
+		} // end for
+
+		return out.toString().getBytes(UTF8);
+	} // end titlesDat
+
+	/***
+	 * A made up series cache, as filled in from AniDB.
+	 * @param series - Number of series in it
+	 * @param episodes - Regular episodes of each series, a special is added for every 12
+	 * @return The cache
+	 */
+	public static SeriesList library(int series, int episodes) {
+		SeriesList result = new SeriesList();
+		Random random = new Random(SEED);
+
+		for (int aid = 1; aid <= series; aid++) {
+			SeriesEntry entry = new SeriesEntry(words(random, 4) + " " + aid, aid);
+			StringBuilder plot = new StringBuilder();
+
+			for (int i = 0; i < 20; i++)
+				plot.append(words(random, 4)).append(". ");
+			entry.setPlot(plot.toString());
+			entry.setRating(random.nextInt(1001));
+			entry.setThumb(aid + ".jpg");
+			for (int i = 0; i < 3; i++)
+				entry.addGenre(WORDS[random.nextInt(WORDS.length)]);
+
+			for (int ep = 1; ep <= episodes; ep++) {
+				entry.addEpisode(episode(aid * 1000 + ep, EpisodeEntry.REGULAR, ep, random));
+				if (ep % 12 == 0)
+					entry.addEpisode(episode(aid * 1000 + 500 + ep / 12, EpisodeEntry.SPECIAL, ep / 12, random));
+			} // end for
+
+			result.addSeries(entry);
+		} // end for
+
+		return result;
+	} // end library
+
+	/***
+	 * The filter the benchmarks load the titles with, every language and title type.
+	 * @return The filter
+	 */
+	public static TitleFilter filter() {
+		return new TitleFilter("", TitleFilter.OFFICIAL + "," + TitleFilter.SHORT);
+	} // end filter
+
+	// The titles of one anime as type, language and title
+	private static String[][] titles(int aid, Random random) {
+		int official = random.nextInt(3);
+		int synonyms = random.nextInt(4);
+		int shorts = random.nextInt(2);
+		String[][] result = new String[1 + official + synonyms + shorts][];
+		int n = 0;
+
+		result[n++] = new String[] { TitleFilter.MAIN, "x-jat", words(random, 3) + " " + aid };
+		for (int i = 0; i < official; i++)
+			result[n++] = new String[] { TitleFilter.OFFICIAL, LANGS[random.nextInt(LANGS.length)], words(random, 4) };
+		for (int i = 0; i < synonyms; i++)
+			result[n++] = new String[] { "syn", LANGS[random.nextInt(LANGS.length)], words(random, 3) };
+		for (int i = 0; i < shorts; i++)
+			result[n++] = new String[] { TitleFilter.SHORT, "x-jat", words(random, 1) };
+
+		return result;
+	} // end titles
+
+	private static EpisodeEntry episode(int eid, char type, int epno, Random random) {
+		EpisodeEntry result = new EpisodeEntry(eid);
+
+		result.setEpno(EpisodeEntry.formatEpno(type, epno));
+		result.setTitle(words(random, 5));
+		result.setLength(24);
+		result.setAired(1293840000000L + epno * 604800000L);
+		return result;
+	} // end episode
+
+	// Number of a title type in the .dat dump
+	private static int datType(String type) {
+		if (type.equals(TitleFilter.MAIN))
+			return TitleDatParser.MAIN;
+		if (type.equals(TitleFilter.OFFICIAL))
+			return TitleDatParser.OFFICIAL;
+		if (type.equals(TitleFilter.SHORT))
+			return TitleDatParser.SHORT;
+
+		return TitleDatParser.SYNONYM;
+	} // end datType
+
+	// A few words from the list, capitalized the way titles are
+	private static String words(Random random, int most) {
+		StringBuilder out = new StringBuilder();
+		int count = 1 + random.nextInt(most);
+
+		for (int i = 0; i < count; i++) {
+			String word = WORDS[random.nextInt(WORDS.length)];
+
+			if (i > 0)
+				out.append(' ');
+			out.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+		} // end for
+
+		return out.toString();
+	} // end words
+
+} // end class Bench
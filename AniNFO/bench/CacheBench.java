@@ -0,0 +1,88 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/***
+ * CacheBench - Times saving and loading a series cache of 20000 series with the
+ * binary CacheFile format, against the Java serialization the cache used to be
+ * written with, and gives the size of each file. Saving with CacheFile includes
+ * syncing the file to disk, the serialized cache was never synced.
+ *
+ * Usage: java CacheBench [series]
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class CacheBench {
+	/*** CONSTANTS ***/
+	private static final int		SERIES		=	20000;		// Series in the cache
+	private static final int		EPISODES	=	12;			// Regular episodes of each series
+	private static final int		RUNS		=	9;			// Timed runs of each format
+
+	public static void main(String[] args) throws Exception {
+		final SeriesList cache = Bench.library(Bench.size(args, SERIES), EPISODES);
+		final File binary = File.createTempFile("cache", ".dat");
+		final File serialized = File.createTempFile("cache", ".ser");
+
+		try {
+			System.out.println(cache.size() + " series of " + EPISODES + " episodes");
+
+			Bench.time("serialization, save", RUNS, new Bench.Task() {
+				@Override
+				public Object run() throws Exception {
+					ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(serialized));
+					out.writeObject(cache);
+					out.close();
+					return serialized;
+				}
+			});
+			Bench.time("CacheFile, save", RUNS, new Bench.Task() {
+				@Override
+				public Object run() throws Exception {
+					CacheFile.write(binary, cache);
+					return binary;
+				}
+			});
+			Bench.time("serialization, load", RUNS, new Bench.Task() {
+				@Override
+				public Object run() throws Exception {
+					ObjectInputStream in = new ObjectInputStream(new FileInputStream(serialized));
+					try {
+						return in.readObject();
+					}
+					finally {
+						in.close();
+					}
+				}
+			});
+			Bench.time("CacheFile, load", RUNS, new Bench.Task() {
+				@Override
+				public Object run() throws Exception {
+					return CacheFile.read(binary);
+				}
+			});
+
+			System.out.printf("%-48s %12d KB%n", "serialization, file size", serialized.length() / 1024);
+			System.out.printf("%-48s %12d KB%n", "CacheFile, file size", binary.length() / 1024);
+		} // end try
+		finally {
+			binary.delete();
+			serialized.delete();
+		}
+	} // end main
+
+} // end class CacheBench
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/***
+ * ModelBench - Times filling in the details of every file of a library from the
+ * series cache: finding the series, each of its episodes and its genre list. The
+ * array backed SeriesList, EpisodeList and SeriesEntry are timed against the walks
+ * over LinkedLists with get(i) they replaced. The old walks are too slow to run over
+ * the whole library, so they are timed on the first few series and both are given
+ * per series.
+ *
+ * Usage: java ModelBench [series] [episodes]
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class ModelBench {
+	/*** CONSTANTS ***/
+	private static final int		SERIES		=	2000;		// Series in the library
+	private static final int		EPISODES	=	26;			// Regular episodes of each series
+	private static final int		OLD_SERIES	=	20;			// Series filled in by a run of the old walks
+	private static final int		RUNS		=	9;			// Timed runs of each model
+
+	public static void main(String[] args) throws Exception {
+		final int series = Bench.size(args, SERIES);
+		final int episodes = (args.length > 1) ? Integer.parseInt(args[1]) : EPISODES;
+		final SeriesList cache = Bench.library(series, episodes);
+
+		// The same cache as the old model held it
+		final LinkedList<SeriesEntry> oldSeries = new LinkedList<SeriesEntry>();
+		final LinkedList<?>[] oldEpisodes = new LinkedList<?>[series + 1];
+		final LinkedList<?>[] oldGenres = new LinkedList<?>[series + 1];
+
+		for (SeriesEntry entry : cache.toArray()) {
+			oldSeries.add(entry);
+			oldEpisodes[entry.getAID()] = new LinkedList<EpisodeEntry>(Arrays.asList(entry.getEpisodes().toArray()));
+			oldGenres[entry.getAID()] = new LinkedList<String>(Arrays.asList(entry.getGenres()));
+		} // end for
+
+		System.out.println(cache.size() + " series of " + episodes + " episodes");
+
+		double old = Bench.time("LinkedList walks, " + OLD_SERIES + " series", RUNS, new Bench.Task() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object run() {
+				int found = 0;
+				for (int aid = 1; aid <= OLD_SERIES; aid++) {
+					SeriesEntry entry = oldGetSeries(oldSeries, aid);
+					for (int ep = 1; ep <= episodes; ep++) {
+						if (oldGetEpisode((LinkedList<EpisodeEntry>)oldEpisodes[entry.getAID()], ep) != null)
+							found++;
+					}
+					found += oldGetGenre((LinkedList<String>)oldGenres[entry.getAID()]).length();
+				} // end for
+				return found;
+			}
+		}) / OLD_SERIES;
+		double arrays = Bench.time("Arrays and indexes, " + series + " series", RUNS, new Bench.Task() {
+			@Override
+			public Object run() {
+				int found = 0;
+				for (int aid = 1; aid <= series; aid++) {
+					SeriesEntry entry = cache.getSeries(aid);
+					for (int ep = 1; ep <= episodes; ep++) {
+						if (cache.getEpisode(aid, ep) != null)
+							found++;
+					}
+					found += entry.getGenre().length();
+				} // end for
+				return found;
+			}
+		}) / series;
+
+		System.out.printf("%-48s %12.3f us%n", "LinkedList walks, each series", old * 1000);
+		System.out.printf("%-48s %12.3f us%n", "Arrays and indexes, each series", arrays * 1000);
+	} // end main
+
+	// SeriesList.getSeries as it was, every series is checked
+	private static SeriesEntry oldGetSeries(LinkedList<SeriesEntry> series, int aid) {
+		SeriesEntry result = null;
+
+		for (int i = 0; i < series.size(); i++) {
+			if (series.get(i).getAID() == aid)
+				result = series.get(i);
+		} // end for
+
+		return result;
+	} // end oldGetSeries
+
+	// EpisodeList.getEpisode as it was
+	private static EpisodeEntry oldGetEpisode(LinkedList<EpisodeEntry> episodes, int epno) {
+		for (int i = 0; i < episodes.size(); i++) {
+			EpisodeEntry temp = episodes.get(i);
+			if (temp.getEpno() == epno)
+				return temp;
+		} // end for
+
+		return null;
+	} // end oldGetEpisode
+
+	// SeriesEntry.getGenre as it was
+	private static String oldGetGenre(LinkedList<String> genres) {
+		String result = genres.getFirst();
+
+		for (int i = 1; i < genres.size(); i++)
+			result = result + ", " + genres.get(i);
+
+		return result;
+	} // end oldGetGenre
+
+} // end class ModelBench
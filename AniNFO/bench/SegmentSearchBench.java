@@ -0,0 +1,81 @@
+import java.util.concurrent.ForkJoinPool;
+
+/***
+ * SegmentSearchBench - Times searching the segments of the title list on pools of
+ * 1 to 16 threads. One thread searches the segments one after another, the same as
+ * the sequential search. Both the substring search and the ranked search are timed.
+ *
+ * Usage: java SegmentSearchBench [anime]
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class SegmentSearchBench {
+	/*** CONSTANTS ***/
+	private static final int		RUNS		=	21;			// Timed runs on each pool
+	private static final int		MOST_THREADS	=	16;			// Largest pool tried
+	private static final int		RANKED		=	10;			// Matches kept by the ranked search
+	private static final String[]	QUERIES		=	{ "gundam", "no", "season 2nd", "pokemon", "abc", "suzumiya haruhi" };
+
+	public static void main(String[] args) throws Exception {
+		AnimeTitles titles = DatabaseMgr.parseTitles(Bench.titlesXml(Bench.size(args, Bench.ANIME)), 1, Bench.filter());
+		final AnimeTitle[] list = titles.toArray();
+		final TitleMatcher[] queries = new TitleMatcher[QUERIES.length];
+
+		for (int i = 0; i < queries.length; i++)
+			queries[i] = new TitleMatcher(QUERIES[i]);
+
+		System.out.println(list.length + " anime in segments of " + TitleSegments.SEGMENT_SIZE + ", "
+				+ Runtime.getRuntime().availableProcessors() + " cores");
+
+		double searchOne = 0;
+		double rankOne = 0;
+
+		for (int threads = 1; threads <= MOST_THREADS; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			final TitleSegments segments = new TitleSegments(list, pool);
+
+			double search = Bench.time("search, " + threads + " threads", RUNS, new Bench.Task() {
+				@Override
+				public Object run() {
+					int found = 0;
+					for (TitleMatcher query : queries)
+						found += segments.search(query).size();
+					return found;
+				}
+			});
+			double rank = Bench.time("rank, " + threads + " threads", RUNS, new Bench.Task() {
+				@Override
+				public Object run() {
+					int found = 0;
+					for (TitleMatcher query : queries)
+						found += segments.rank(query, RANKED).length;
+					return found;
+				}
+			});
+
+			if (threads == 1) {
+				searchOne = search;
+				rankOne = rank;
+			}
+			else {
+				System.out.printf("%-48s %12.2fx %8.2fx%n", "speedup of search, rank", searchOne / search, rankOne / rank);
+			}
+
+			pool.shutdown();
+		} // end for
+	} // end main
+
+} // end class SegmentSearchBench
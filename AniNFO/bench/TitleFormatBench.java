@@ -0,0 +1,66 @@
+import java.io.ByteArrayInputStream;
+
+/***
+ * TitleFormatBench - Times reading the same made up title dump from the XML format
+ * and from the pipe separated anime-titles.dat format. The XML is read both in one
+ * piece, as on a single core, and split over the cores of the shared pool.
+ *
+ * Usage: java TitleFormatBench [anime]
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleFormatBench {
+	/*** CONSTANTS ***/
+	private static final int		RUNS	=	15;		// Timed runs of each format
+
+	public static void main(String[] args) throws Exception {
+		int anime = Bench.size(args, Bench.ANIME);
+		final byte[] xml = Bench.titlesXml(anime);
+		final byte[] dat = Bench.titlesDat(anime);
+		final TitleFilter filter = Bench.filter();
+		final int chunks = DatabaseMgr.getPool().getParallelism() * 4;
+
+		// Both formats have to give the same titles for the times to be comparable
+		AnimeTitles fromXml = DatabaseMgr.parseTitles(xml, 1, filter);
+		AnimeTitles fromDat = TitleDatParser.parse(new ByteArrayInputStream(dat), filter);
+		if (!TitleDelta.compare(fromXml, fromDat).isEmpty())
+			throw new IllegalStateException("The two dumps were read differently");
+
+		System.out.println("XML " + xml.length / 1024 + " KB, .dat " + dat.length / 1024 + " KB, " + fromDat.size() + " anime");
+
+		double sequential = Bench.time("XML, one chunk", RUNS, new Bench.Task() {
+			@Override
+			public Object run() throws Exception {
+				return DatabaseMgr.parseTitles(xml, 1, filter);
+			}
+		});
+		Bench.time("XML, " + chunks + " chunks", RUNS, new Bench.Task() {
+			@Override
+			public Object run() throws Exception {
+				return DatabaseMgr.parseTitles(xml, chunks, filter);
+			}
+		});
+		double lines = Bench.time(".dat", RUNS, new Bench.Task() {
+			@Override
+			public Object run() throws Exception {
+				return TitleDatParser.parse(new ByteArrayInputStream(dat), filter);
+			}
+		});
+
+		System.out.printf("%-48s %12.2fx%n", ".dat against XML in one chunk", sequential / lines);
+	} // end main
+
+} // end class TitleFormatBench
@@ -0,0 +1,52 @@
+/***
+ * TitleParseBench - Times the parallel titles XML parser against the size of the
+ * split. One chunk is the sequential parse, more chunks spread it over the cores of
+ * the shared pool. To see how it scales with fewer cores, run it with the JVM option
+ * -XX:ActiveProcessorCount=n, the pool is sized to the cores the JVM sees.
+ *
+ * Usage: java TitleParseBench [anime]
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleParseBench {
+	/*** CONSTANTS ***/
+	private static final int		RUNS	=	15;		// Timed runs of each split
+
+	public static void main(String[] args) throws Exception {
+		final byte[] data = Bench.titlesXml(Bench.size(args, Bench.ANIME));
+		final TitleFilter filter = Bench.filter();
+		int cores = DatabaseMgr.getPool().getParallelism();
+
+		System.out.println("Dump of " + data.length / 1024 + " KB, pool of " + cores + " threads");
+
+		double sequential = 0;
+		for (int chunks = 1; chunks <= cores * 4; chunks *= 2) {
+			final int split = chunks;
+			double ms = Bench.time("parseTitles, " + chunks + " chunks", RUNS, new Bench.Task() {
+				@Override
+				public Object run() throws Exception {
+					return DatabaseMgr.parseTitles(data, split, filter);
+				}
+			});
+
+			if (chunks == 1)
+				sequential = ms;
+			else
+				System.out.printf("%48s %12.2fx%n", "speedup", sequential / ms);
+		} // end for
+	} // end main
+
+} // end class TitleParseBench
@@ -1,4 +1,5 @@
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /***
  * AnimeTitle - Class to store data on an individual Anime Title from the animetitles.xml file
@@ -21,40 +22,140 @@ import java.util.LinkedList;
  *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 public class AnimeTitle {
+	/*** CONSTANTS ***/
+	// Orders entries by aid
+	public static final Comparator<AnimeTitle> BY_AID = new Comparator<AnimeTitle>() {
+		@Override
+		public int compare(AnimeTitle a, AnimeTitle b) {
+			return a.aID < b.aID ? -1 : (a.aID == b.aID ? 0 : 1);
+		}
+	};
+	
+	private static final int[]		NO_TITLES	=	new int[0];		// Shared by entries with only a main title
+	
 	/*** CLASS DATA MEMBERS ***/
 	private int						aID;			// Anime ID number
-	private String 					title;			// Official anime title
-	private LinkedList<String>		officialTitle;	// Linked list of Main Titles
-	private int						otCount;		// Count of main title entries
-	private LinkedList<String>		shortTitle;		// Linked list of short titles
-	private int						stCount;		// Count of short title entries
+	private TitleSource				store;			// Where the titles are kept
+	private TitleStore				writable;		// The same if titles can be added to it, null if not
+	private int						title;			// Official anime title, a TitleStore handle
+	private int[]					titles;			// Official titles then short titles, TitleStore handles
+	private int						otCount;		// Count of official titles, the rest are short titles
 	private boolean					movie;			// Identify if this is a movie or series
+	private char[]					keys;			// Normalized titles for searching, null until needed
+	
+	/***
+	 * Create an entry with no titles yet.
+	 * @param newID - AniDB ID of the anime
+	 * @param newStore - Store to keep the titles in, usually shared by every entry of one load
+	 */
+	public AnimeTitle(int newID, TitleStore newStore) {
+		aID = newID;
+		store = newStore;
+		writable = newStore;
+		title = TitleStore.NONE;
+		titles = NO_TITLES;
+	} // end AnimeTitle
 	
-	public AnimeTitle(int newID) {
+	/***
+	 * Copy an entry into another store, so the store it came from is no longer needed.
+	 * @param other - Entry to copy
+	 * @param newStore - Store to keep the titles of the copy in
+	 */
+	public AnimeTitle(AnimeTitle other, TitleStore newStore) {
+		aID = other.aID;
+		store = newStore;
+		writable = newStore;
+		title = move(other.title, other.store);
+		titles = NO_TITLES;
+		otCount = other.otCount;
+		movie = other.movie;
+		keys = other.keys;
+		
+		if (other.titles.length > 0) {
+			titles = new int[other.titles.length];
+			for (int i = 0; i < titles.length; i++)
+				titles[i] = move(other.titles[i], other.store);
+		} // end if
+	} // end AnimeTitle
+	
+	/***
+	 * Create an entry from handles already in a store, used to read a title snapshot.
+	 * Adding titles to the entry later moves its titles into a TitleStore of its own.
+	 * @param newID - AniDB ID of the anime
+	 * @param newStore - Titles the handles point into
+	 * @param main - Handle of the main title
+	 * @param handles - Handles of the official titles then the short titles
+	 * @param official - Count of official titles at the start of the handles
+	 * @param isMovie - If the anime is a movie
+	 */
+	AnimeTitle(int newID, TitleSource newStore, int main, int[] handles, int official, boolean isMovie) {
 		aID = newID;
-		title = null;
-		officialTitle = new LinkedList<String>();
-		shortTitle = new LinkedList<String>();
+		store = newStore;
+		title = main;
+		titles = (handles.length == 0) ? NO_TITLES : handles;
+		otCount = official;
+		movie = isMovie;
 	} // end AnimeTitle
 	
 	public void setMainTitle(String newTitle) {
-		title = newTitle;
+		title = writable().add(newTitle);
+		keys = null;
 	} // end setMainTitle
 	
 	public String getMainTitle() {
-		return title;
+		return store.get(title);
 	} // end toString
 	
 	public void addOfficialTitle(String newTitle) {
-		officialTitle.add(newTitle);
-		otCount++;
+		int[] result = Arrays.copyOf(titles, titles.length + 1);
+		
+		// Official titles go before the short titles
+		System.arraycopy(titles, otCount, result, otCount + 1, titles.length - otCount);
+		result[otCount++] = writable().add(newTitle);
+		titles = result;
+		keys = null;
 	} // end addMainTitle
 	
 	public void addShortTitle(String newTitle) {
-		shortTitle.add(newTitle);
-		stCount++;
+		titles = Arrays.copyOf(titles, titles.length + 1);
+		titles[titles.length - 1] = writable().add(newTitle);
+		keys = null;
 	} // end addShortTitle
 	
+	/***
+	 * Add the titles of another entry for the same anime. Used when the
+	 * titles for one anime are split up in the dump.
+	 * @param other - Entry with more titles for this anime
+	 */
+	public void addTitles(AnimeTitle other) {
+		writable();
+		if (title == TitleStore.NONE)
+			title = move(other.title, other.store);
+		
+		int[] added = other.titles;
+		if (other.store != store) {
+			added = new int[other.titles.length];
+			for (int i = 0; i < added.length; i++)
+				added[i] = move(other.titles[i], other.store);
+		} // end if
+		
+		int[] result = new int[titles.length + added.length];
+		int n = 0;
+		
+		// Keep the official titles of both entries ahead of the short titles
+		System.arraycopy(titles, 0, result, n, otCount);
+		n += otCount;
+		System.arraycopy(added, 0, result, n, other.otCount);
+		n += other.otCount;
+		System.arraycopy(titles, otCount, result, n, titles.length - otCount);
+		n += titles.length - otCount;
+		System.arraycopy(added, other.otCount, result, n, added.length - other.otCount);
+		
+		titles = result;
+		otCount += other.otCount;
+		keys = null;
+	} // end addTitles
+	
 	public int getID() {
 		return aID;
 	} // end getID
@@ -68,42 +169,99 @@ public class AnimeTitle {
 	}
 	
 	public boolean hasTitle(String query) {
-		//AbstractStringMetric metric = new QGramsDistance();		// Similarity testing
-		String name;											// String for current name being tested
-		//float similarity;										// Current similarity results
-		
-		// Ensure query is lower case
-		query = query.toLowerCase();
-		
-		// check the official title first
-		name = title.toLowerCase();
-		//similarity = metric.getSimilarity(name, query);
-		
-		if (name.contains(query))
-			return true;
-		
-		// Test against main titles
-		for (int i = 0; i < otCount; i++) {
-			name = officialTitle.get(i).toLowerCase();
-			//similarity = metric.getSimilarity(name, query);
-			if (name.contains(query))
-				return true;
-		} // end for
+		return hasTitle(new TitleMatcher(query));
+	} // end hasTitle
+	
+	/***
+	 * Check if any title contains the query, ignoring case, accents and
+	 * character width.
+	 * @param query - The prepared query
+	 * @return true if a title matched
+	 */
+	public boolean hasTitle(TitleMatcher query) {
+		return query.matches(getKeys());
+	} // end hasTitle
+	
+	/***
+	 * The main, official and short titles normalized by TitleMatcher, joined
+	 * with TitleMatcher.SEPARATOR. They are worked out once and kept.
+	 * @return The normalized titles
+	 */
+	public char[] getKeys() {
+		char[] result = keys;
 		
-		// Test against short titles
-		for (int i = 0; i < stCount; i++) {
-			name = shortTitle.get(i).toLowerCase();
-			//similarity = metric.getSimilarity(name, query);
-			if (name.contains(query))
-				return true;
+		if (result == null) {
+			String[] names = new String[1 + titles.length];
+			
+			names[0] = store.get(title);
+			for (int i = 0; i < titles.length; i++)
+				names[i + 1] = store.get(titles[i]);
+			
+			result = TitleMatcher.join(names);
+			keys = result;
+		} // end if
+		
+		return result;
+	} // end getKeys
+	
+	public String getOfficialTitle(int i) {
+		if (i < 0 || i >= otCount)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + otCount);
+		
+		return store.get(titles[i]);
+	} // end getOfficialTitle
+	
+	public String getShortTitle(int i) {
+		if (i < 0 || i >= titles.length - otCount)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (titles.length - otCount));
+		
+		return store.get(titles[otCount + i]);
+	} // end getShortTitle
+	
+	/***
+	 * Check if the other entry has the same titles as this one. Used to find
+	 * entries that changed between two title dumps.
+	 * @param other - Entry to compare against
+	 * @return true if the titles and movie flag are identical
+	 */
+	public boolean sameTitles(AnimeTitle other) {
+		if (aID != other.aID || movie != other.movie || otCount != other.otCount || titles.length != other.titles.length)
+			return false;
+		
+		// Each distinct title has one handle in a store, so equal handles are equal titles
+		if (store == other.store)
+			return title == other.title && Arrays.equals(titles, other.titles);
+		
+		if (!same(store.get(title), other.store.get(other.title)))
+			return false;
+		
+		for (int i = 0; i < titles.length; i++) {
+			if (!same(store.get(titles[i]), other.store.get(other.titles[i])))
+				return false;
 		} // end for
 		
-		// title was not found
-		return false;
-	} // end hasTitle
+		return true;
+	} // end sameTitles
+	
+	// Handle of the main title, for writing a title snapshot
+	int getMainHandle() {
+		return title;
+	} // end getMainHandle
+	
+	// Handles of the official titles then the short titles, for writing a title snapshot
+	int[] getHandles() {
+		return titles;
+	} // end getHandles
+	
+	/***
+	 * Where this entry keeps its titles.
+	 */
+	public TitleSource getStore() {
+		return store;
+	} // end getStore
 	
 	public int shortTitleCount() {
-		return stCount;
+		return titles.length - otCount;
 	}
 	
 	public int officialTitleCount() {
@@ -112,7 +270,35 @@ public class AnimeTitle {
 	
 	@Override
 	public String toString() {
-		return title;
+		return getMainTitle();
 	} // end toString
 	
+	// Handle in this entry's store of a title kept in another store
+	private int move(int handle, TitleSource from) {
+		if (from == store || handle == TitleStore.NONE)
+			return handle;
+		
+		return writable().add(from.get(handle));
+	} // end move
+	
+	// The store to add titles to, the titles of a snapshot entry are moved into one first
+	private TitleStore writable() {
+		if (writable == null) {
+			TitleSource from = store;
+			
+			writable = new TitleStore();
+			store = writable;
+			title = move(title, from);
+			titles = titles.clone();
+			for (int i = 0; i < titles.length; i++)
+				titles[i] = move(titles[i], from);
+		} // end if
+		
+		return writable;
+	} // end writable
+	
+	private static boolean same(String a, String b) {
+		return (a == null) ? b == null : a.equals(b);
+	} // end same
+	
 } // end class AnimeTitle
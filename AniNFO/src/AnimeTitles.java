@@ -1,4 +1,12 @@
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /***
  * AnimeTitles - This class stores the list of Anime Titles from the animetitles.xml file
@@ -22,51 +30,428 @@ import java.util.LinkedList;
  *
  */
 public class AnimeTitles {
+	/*** CONSTANTS ***/
+	private static final int		INITIAL_SIZE	=	16;		// Starting length of the entry array
+	
 	/*** CLASS DATA MEMBERS ***/
-	private LinkedList<AnimeTitle>	titleList;			// List of AnimeTitle entries
+	private AnimeTitle[]			titleList;			// List of AnimeTitle entries, the first titleCount are used
 	private int						titleCount;			// counter of titles added
+	private IntHashMap<AnimeTitle>	aidIndex;			// Entries by aid
+	private volatile TitleSearch	search;				// Search structures, null until built or first used
+	private TitleStore				store;				// Store entries added by apply are copied into, null until needed
+	private volatile ForkJoinTask<?>	building;			// Builds the search structures in the background, null if not
 	
 	public AnimeTitles() {
-		titleList = new LinkedList<AnimeTitle>();
+		titleList = new AnimeTitle[INITIAL_SIZE];
+		aidIndex = new IntHashMap<AnimeTitle>();
+	} // end AnimeTitles
+	
+	/***
+	 * Create an empty list sized for the number of entries about to be added,
+	 * so the aid index does not have to grow while loading.
+	 * @param expected - Number of entries expected
+	 */
+	public AnimeTitles(int expected) {
+		titleList = new AnimeTitle[Math.max(expected, 1)];
+		aidIndex = new IntHashMap<AnimeTitle>(expected);
 	} // end AnimeTitles
 	
+	/***
+	 * Make a copy of this list that can be changed without affecting this one.
+	 * The AnimeTitle entries themselves are shared.
+	 * @return The copy
+	 */
+	public AnimeTitles copy() {
+		AnimeTitles result = new AnimeTitles();
+		
+		result.titleList = Arrays.copyOf(titleList, Math.max(titleCount, 1));
+		result.titleCount = titleCount;
+		result.aidIndex = new IntHashMap<AnimeTitle>(aidIndex);
+		result.store = store;
+		awaitIndex();
+		result.search = search;		// Same anime, apply keeps the structures up to date
+		
+		return result;
+	} // end copy
+	
 	public void add(AnimeTitle newTitle) {
-		titleList.add(newTitle);
-		titleCount++;
+		ensureCapacity(titleCount + 1);
+		titleList[titleCount++] = newTitle;
+		aidIndex.put(newTitle.getID(), newTitle);
+		changed();
 	} // end add
 	
-	public AnimeTitles searchTitles(String title) {
-		AnimeTitles results = new AnimeTitles();	// Results found
-		AnimeTitle temp;							// temp title element for loop
+	/***
+	 * Remove the entry for the given aid.
+	 * @param aid - AniDB ID of the entry to remove
+	 * @return The removed entry, null if there was none
+	 */
+	public AnimeTitle remove(int aid) {
+		if (aidIndex.remove(aid) == null)
+			return null;
 		
-		// Loop through the list of titles, if title matches string
-		// add to the result list
 		for (int i = 0; i < titleCount; i++) {
-			temp = titleList.get(i);
-			if (temp.hasTitle(title)) {
-				results.add(temp);
+			AnimeTitle temp = titleList[i];
+			if (temp.getID() == aid) {
+				System.arraycopy(titleList, i + 1, titleList, i, titleCount - i - 1);
+				titleList[--titleCount] = null;
+				changed();
+				return temp;
 			} // end if
 		} // end for
 		
-		// Return the results
+		return null;
+	} // end remove
+	
+	/***
+	 * Replace the entry with the same aid as the new entry.
+	 * @param newTitle - The updated entry
+	 * @return The entry that was replaced, null if there was none
+	 */
+	public AnimeTitle replace(AnimeTitle newTitle) {
+		if (!aidIndex.containsKey(newTitle.getID()))
+			return null;
+		
+		aidIndex.put(newTitle.getID(), newTitle);
+		for (int i = 0; i < titleCount; i++) {
+			AnimeTitle temp = titleList[i];
+			if (temp.getID() == newTitle.getID()) {
+				titleList[i] = newTitle;
+				changed();
+				return temp;
+			} // end if
+		} // end for
+		
+		return null;
+	} // end replace
+	
+	/***
+	 * Insert a new entry keeping the list in aid order. New entries usually
+	 * have the highest aid so the list is searched from the end.
+	 * @param newTitle - The entry to insert
+	 */
+	public void insert(AnimeTitle newTitle) {
+		int i = titleCount;
+		
+		while (i > 0 && titleList[i - 1].getID() >= newTitle.getID())
+			i--;
+		
+		ensureCapacity(titleCount + 1);
+		System.arraycopy(titleList, i, titleList, i + 1, titleCount - i);
+		titleList[i] = newTitle;
+		titleCount++;
+		aidIndex.put(newTitle.getID(), newTitle);
+		changed();
+	} // end insert
+	
+	// Grow the entry array to hold at least the given number of entries
+	private void ensureCapacity(int needed) {
+		if (needed > titleList.length)
+			titleList = Arrays.copyOf(titleList, Math.max(needed, titleList.length * 2));
+	} // end ensureCapacity
+	
+	// Drop the search structures, they no longer match the list
+	private void changed() {
+		search = null;
+	} // end changed
+	
+	/***
+	 * Apply the changes between two title dumps to this list, in one pass over the
+	 * list. New and changed entries are copied into a store of this list's own, so
+	 * the store of the dump they were read from is not kept alive by them.
+	 * 
+	 * The search structures are not built again, the changed entries are searched
+	 * beside them until enough has changed to make building them worthwhile.
+	 * @param delta - Changes found by TitleDelta.compare
+	 */
+	public void apply(TitleDelta delta) {
+		if (delta.isEmpty())
+			return;
+		
+		awaitIndex();
+		if (store == null && !(delta.getChanged().isEmpty() && delta.getAdded().isEmpty()))
+			store = new TitleStore();
+		
+		AnimeTitle[] gone = new AnimeTitle[delta.removedCount() + delta.changedCount()];	// Entries taken out
+		AnimeTitle[] fresh = new AnimeTitle[delta.changedCount() + delta.addedCount()];	// Entries put in
+		AnimeTitle[] added = new AnimeTitle[delta.addedCount()];							// New anime
+		int goneCount = 0;
+		int freshCount = 0;
+		int addedCount = 0;
+		
+		for (AnimeTitle temp : delta.getRemoved()) {
+			AnimeTitle old = aidIndex.remove(temp.getID());
+			if (old != null)
+				gone[goneCount++] = old;
+		} // end for
+		
+		for (AnimeTitle temp : delta.getChanged()) {
+			if (!aidIndex.containsKey(temp.getID()))
+				continue;
+			
+			AnimeTitle entry = new AnimeTitle(temp, store);
+			gone[goneCount++] = aidIndex.put(entry.getID(), entry);
+			fresh[freshCount++] = entry;
+		} // end for
+		
+		for (AnimeTitle temp : delta.getAdded()) {
+			if (aidIndex.containsKey(temp.getID()))
+				continue;
+			
+			AnimeTitle entry = new AnimeTitle(temp, store);
+			aidIndex.put(entry.getID(), entry);
+			fresh[freshCount++] = entry;
+			added[addedCount++] = entry;
+		} // end for
+		
+		Arrays.sort(fresh, 0, freshCount, AnimeTitle.BY_AID);
+		Arrays.sort(added, 0, addedCount, AnimeTitle.BY_AID);
+		
+		// Changed entries take the place of the old ones, new ones go in aid order
+		AnimeTitle[] result = new AnimeTitle[Math.max(titleCount + addedCount, INITIAL_SIZE)];
+		int count = 0;
+		int a = 0;
+		
+		for (int i = 0; i < titleCount; i++) {
+			AnimeTitle kept = aidIndex.get(titleList[i].getID());
+			if (kept == null)
+				continue;
+			
+			while (a < addedCount && added[a].getID() < kept.getID())
+				result[count++] = added[a++];
+			result[count++] = kept;
+		} // end for
+		while (a < addedCount)
+			result[count++] = added[a++];
+		
+		titleList = result;
+		titleCount = count;
+		
+		TitleSearch current = search;
+		if (current != null) {
+			search = current.update(Arrays.copyOf(gone, goneCount), Arrays.copyOf(fresh, freshCount), aidIndex);
+			
+			// Built again from scratch, so start a new store and let the titles no longer used go
+			if (search == null)
+				rehome();
+		} // end if
+	} // end apply
+	
+	// Copy the entries kept in this list's store into a new one
+	private void rehome() {
+		TitleStore old = store;
+		
+		store = new TitleStore();
+		for (int i = 0; i < titleCount; i++) {
+			if (titleList[i].getStore() == old) {
+				titleList[i] = new AnimeTitle(titleList[i], store);
+				aidIndex.put(titleList[i].getID(), titleList[i]);
+			}
+		} // end for
+	} // end rehome
+	
+	/***
+	 * Build the trigram index and segments used by searchTitles and rankTitles.
+	 * Call this once the list is loaded, changing the list other than by apply
+	 * drops them until they are built again.
+	 */
+	public void buildIndex() {
+		search = new TitleSearch(toArray(), aidIndex, true);
+	} // end buildIndex
+	
+	/***
+	 * Check if the search structures are built and up to date.
+	 * @return true if buildIndex does not need to be called
+	 */
+	public boolean isIndexed() {
+		awaitIndex();
+		TitleSearch current = search;
+		
+		return current != null && current.isIndexed();
+	} // end isIndexed
+	
+	/***
+	 * Build the same as buildIndex, but on the given pool so the list can be used
+	 * straight away. Searches wait for the build to finish.
+	 * @param pool - Pool to build on
+	 */
+	public void buildIndex(ForkJoinPool pool) {
+		building = pool.submit(new Runnable() {
+			public void run() {
+				buildIndex();
+			}
+		});
+	} // end buildIndex
+	
+	// Wait for a build started by buildIndex(ForkJoinPool)
+	private void awaitIndex() {
+		ForkJoinTask<?> task = building;
+		
+		if (task != null)
+			task.join();
+	} // end awaitIndex
+	
+	/***
+	 * Find the anime for a name, trying the title types in turn before looking for
+	 * the name inside titles. An exact main title is used first, then an exact
+	 * official title, then an exact short title, and only when none of those match
+	 * are the titles containing the name searched for.
+	 * @param title - The name to look for
+	 * @return The anime found by the first step with a match, in list order
+	 */
+	public AnimeTitles findTitles(String title) {
+		AnimeTitles results = exactTitles(title);
+		
+		if (results != null)
+			return results;
+		
+		return searchTitles(title);
+	} // end findTitles
+	
+	/***
+	 * Find the anime with a title that is exactly the given name, main titles first,
+	 * then official titles, then short titles. The lookup tables are built the first
+	 * time if buildIndex was not called.
+	 * @param title - The name to look up
+	 * @return The anime of the first title type with a match, null if no title matched
+	 */
+	public AnimeTitles exactTitles(String title) {
+		awaitIndex();
+		return getSearch().exact(title);
+	} // end exactTitles
+	
+	// The search structures, without the index and segments if they were not built
+	private synchronized TitleSearch getSearch() {
+		if (search == null)
+			search = new TitleSearch(toArray(), aidIndex, false);
+		
+		return search;
+	} // end getSearch
+
+	
+	/***
+	 * Find the anime matching each name in a batch, the same as calling
+	 * searchTitles for each name but with a single pass over the list.
+	 * @param names - Series names to look up
+	 * @return The anime with a title containing each name, in list order
+	 */
+	public Map<String, AnimeTitles> searchTitles(Collection<String> names) {
+		Map<String, AnimeTitles> results = new LinkedHashMap<String, AnimeTitles>();
+		HashMap<String, Integer> numbers = new HashMap<String, Integer>();	// Pattern number of each normalized name
+		ArrayList<char[]> patterns = new ArrayList<char[]>();
+		ArrayList<AnimeTitles> found = new ArrayList<AnimeTitles>();	// Results for each pattern
+		AnimeTitles everything = null;		// Results for names that normalize to nothing
+		
+		// Names that normalize the same share a pattern and a result list
+		for (String name : names) {
+			if (results.containsKey(name))
+				continue;
+			
+			String pattern = TitleMatcher.normalize(name);
+			if (pattern.length() == 0) {
+				if (everything == null)
+					everything = copy();
+				results.put(name, everything);
+				continue;
+			} // end if
+			
+			Integer number = numbers.get(pattern);
+			if (number == null) {
+				number = patterns.size();
+				numbers.put(pattern, number);
+				patterns.add(pattern.toCharArray());
+				found.add(new AnimeTitles());
+			} // end if
+			results.put(name, found.get(number));
+		} // end for
+		
+		if (patterns.isEmpty())
+			return results;
+		
+		// One pass over the list finds every name in each anime's titles
+		TitleAutomaton automaton = new TitleAutomaton(patterns.toArray(new char[patterns.size()][]));
+		int[] hits = new int[patterns.size()];
+		
+		for (int n = 0; n < titleCount; n++) {
+			AnimeTitle temp = titleList[n];
+			int count = automaton.scan(temp.getKeys(), hits);
+			for (int i = 0; i < count; i++)
+				found.get(hits[i]).add(temp);
+		} // end for
+		
 		return results;
 	} // end searchTitles
-
-	public AnimeTitle searchTitles(int aid) {
-		AnimeTitle result = null;
+	
+	/***
+	 * Find the anime whose titles are most like the given title, for names that
+	 * do not match any title exactly. Main titles count for more than official
+	 * and short titles.
+	 * @param title - The title to look for
+	 * @param k - Most matches to return
+	 * @return Up to k matches, best first
+	 */
+	public TitleMatch[] rankTitles(String title, int k) {
+		TitleMatcher query = new TitleMatcher(title);
+		
+		// The index only scores the likely candidates
+		awaitIndex();
+		TitleSearch current = search;
+		if (current != null)
+			return current.rank(query, k);
+		
+		// Score every entry
+		TitleMatch.Best best = new TitleMatch.Best(k);
+		
+		for (int i = 0; i < titleCount; i++)
+			best.offer(titleList[i], query.similarity(titleList[i]), i);
+		
+		return best.toArray();
+	} // end rankTitles
+	
+	/***
+	 * Find the anime with a title or a word in a title starting with the given text,
+	 * for showing matches as a title is typed. The index this uses is built the
+	 * first time, so do not call it on the event thread.
+	 * @param prefix - The text typed so far
+	 * @param limit - Most anime to return
+	 * @return The anime found, ones with a title starting with the text first
+	 */
+	public AnimeTitles prefixSearch(String prefix, int limit) {
+		awaitIndex();
+		return getSearch().prefix(prefix, limit);
+	} // end prefixSearch
+	
+	public AnimeTitles searchTitles(String title) {
+		TitleMatcher query = new TitleMatcher(title);	// Query normalized once for all entries
+		
+		// Use the index when there is one, it gives the same results as checking every entry
+		awaitIndex();
+		TitleSearch current = search;
+		if (current != null)
+			return current.search(query);
+		
+		AnimeTitles results = new AnimeTitles();	// Results found
 		
 		// Loop through the list of titles, if title matches string
 		// add to the result list
 		for (int i = 0; i < titleCount; i++) {
-			AnimeTitle temp = titleList.get(i);
-			if (temp.getID() == aid) {
-				result = temp;
+			if (titleList[i].hasTitle(query)) {
+				results.add(titleList[i]);
 			} // end if
 		} // end for
 		
 		// Return the results
-		return result;		
-	}
+		return results;
+	} // end searchTitles
+
+	/***
+	 * Find the entry for an anime.
+	 * @param aid - AniDB ID of the anime
+	 * @return The entry, null if there is none
+	 */
+	public AnimeTitle searchTitles(int aid) {
+		return aidIndex.get(aid);
+	} // end searchTitles
 	
 	public int size() {
 		return titleCount;
@@ -74,16 +459,22 @@ public class AnimeTitles {
 	
 	// Get the i'th entry in the titleList
 	public AnimeTitle get(int i) {
-		return titleList.get(i);
+		if (i < 0 || i >= titleCount)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + titleCount);
+		
+		return titleList[i];
 	}
 	
 	// Get the first entry
 	public AnimeTitle getFirst() {
-		return titleList.getFirst();
+		if (titleCount == 0)
+			throw new NoSuchElementException();
+		
+		return titleList[0];
 	}
 	
 	// The title list as an array
 	public AnimeTitle[] toArray() {
-		return titleList.toArray(new AnimeTitle[0]);
+		return Arrays.copyOf(titleList, titleCount);
 	}
 } // end class AnimeTitles
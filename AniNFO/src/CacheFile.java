@@ -0,0 +1,553 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/***
+ * CacheFile - Reads and writes the series cache in a compact binary format instead
+ * of Java serialization, so the cache survives changes to the model classes and a
+ * damaged series only loses that series. Files written by older versions with
+ * ObjectOutputStream are still read.
+ *
+ * File layout (numbers are varints unless noted, strings are a varint length + 1
+ * followed by UTF-8, a length of 0 meaning null):
+ *   int magic, int version (fixed width, big endian),
+ *   string table length, string count, strings, int CRC32 of the string table,
+ *   series count, then per series: record length, record, int CRC32 of the record
+ * Each series record holds:
+ *   aid, title, plot, thumbnail, rating * 100, genre count, genres,
+ *   episode count, then per episode: eid, season, byte type, epno, length,
+ *   title, aired
+ * Genres and episode titles are indexes into the strings, + 1 with 0 for null.
+ * Signed numbers are zigzag encoded. Version 1 files have no string table length,
+ * the table has to be read to find the series.
+ *
+ * A damaged file never stops the cache from opening. What can be read of it is
+ * used and a copy of the file is kept beside it, ending in .bad, before it is
+ * rewritten.
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class CacheFile {
+	/*** CONSTANTS ***/
+	private static final int		MAGIC		=	0x414E4343;		// "ANCC"
+	private static final int		VERSION		=	2;				// Layout version
+	private static final int		FRAMED		=	2;				// First version with the string table length
+	private static final int		BUFFER		=	1 << 20;		// Channel buffer size
+	private static final Charset	UTF8		=	Charset.forName("UTF-8");
+
+	/***
+	 * Read the series cache. Series whose checksum does not match are skipped, and
+	 * if the file is cut short or damaged the series before the damage are kept. If
+	 * the string table is damaged the series are kept without their genres and
+	 * episode titles. In a version 1 file a string table too damaged to be read to
+	 * its end also loses the series, as they can not be found without it.
+	 * @param file - The cache file
+	 * @return The cached series, empty if none could be read
+	 * @throws IOException if the file can not be read or is not a cache file
+	 * @throws ClassNotFoundException if an old serialized cache names a missing class
+	 */
+	public static SeriesList read(File file) throws IOException, ClassNotFoundException {
+		ByteBuffer buf = load(file);
+
+		// Caches from older versions are a serialized SeriesList
+		if (buf.remaining() < 8 || buf.getInt(0) != MAGIC)
+			return readSerialized(buf);
+
+		buf.position(4);
+		int version = buf.getInt();
+		if (version > VERSION)
+			throw new IOException("The cache file was written by a newer version (" + version + ")");
+
+		ArrayList<SeriesEntry> result = new ArrayList<SeriesEntry>();
+		boolean damaged = false;
+
+		try {
+			String[] strings = null;
+
+			if (version < FRAMED) {
+				// String table with no length, the series can not be found if it can not be read
+				int start = buf.position();
+				String[] table = readStrings(buf);
+
+				if (crc(buf, start, buf.position()) == buf.getInt())
+					strings = table;
+			} // end if
+			else {
+				// String table framed like a series record, so it can be checked before it is read
+				int length = readSize(buf);
+				int from = buf.position();
+
+				if (length > buf.remaining() - 4)
+					throw new IllegalStateException("String table runs past the end of the cache file");
+
+				buf.position(from + length);
+				if (crc(buf, from, from + length) == buf.getInt()) {
+					ByteBuffer table = buf.duplicate();
+					table.position(from);
+					table.limit(from + length);
+					strings = readStrings(table);
+				} // end if
+			} // end else
+
+			// Strings that fail the check could be anything, read the series without them
+			if (strings == null) {
+				System.err.println("The cache file string table is corrupt, genres and episode titles were dropped");
+				strings = new String[0];
+				damaged = true;
+			} // end if
+
+			// Series records
+			int count = readSize(buf);
+			int skipped = 0;
+
+			for (int i = 0; i < count; i++) {
+				int length = readSize(buf);
+				int from = buf.position();
+
+				if (length > buf.remaining() - 4)
+					throw new IllegalStateException("Series record runs past the end of the cache file");
+
+				buf.position(from + length);
+				if (crc(buf, from, from + length) != buf.getInt()) {
+					skipped++;
+					continue;
+				}
+
+				ByteBuffer record = buf.duplicate();
+				record.position(from);
+				record.limit(from + length);
+
+				try {
+					result.add(readSeries(record, strings));
+				}
+				catch (RuntimeException e) {
+					skipped++;
+				}
+			} // end for
+
+			if (skipped > 0) {
+				System.err.println(skipped + " damaged series were dropped from the cache");
+				damaged = true;
+			}
+		} // end try
+		catch (RuntimeException e) {
+			// Cut short, or a count or length that can not be right
+			System.err.println("The cache file is damaged, " + result.size() + " series were read");
+			damaged = true;
+		}
+
+		if (damaged)
+			keepCopy(file);
+
+		return new SeriesList(result);
+	} // end read
+
+	/***
+	 * Write the series cache. The file is written beside the cache first and then
+	 * moved over it, so the old cache is kept if writing fails. Once this returns the
+	 * new cache is on disk, the file and the move both synced.
+	 * @param file - The cache file
+	 * @param cache - The series to write
+	 * @throws IOException if the file could not be written
+	 */
+	public static void write(File file, SeriesList cache) throws IOException {
+		SeriesEntry[] series = cache.toArray();
+		HashMap<String, Integer> index = new HashMap<String, Integer>();	// String table positions
+		ArrayList<String> strings = new ArrayList<String>();				// Strings in table order
+
+		// Genres and episode titles repeat, they are stored once in the string table
+		for (SeriesEntry entry : series) {
+			for (String genre : entry.getGenres())
+				addString(genre, index, strings);
+
+			for (EpisodeEntry episode : entry.getEpisodes().toArray())
+				addString(episode.getTitle(), index, strings);
+		} // end for
+
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(temp);
+
+		try {
+			FileChannel channel = fos.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+			Record out = new Record();
+
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+
+			out.writeCount(strings.size());
+			for (String value : strings)
+				out.writeString(value);
+
+			Record length = new Record();
+			length.writeCount(out.size());
+			buf = put(channel, buf, length, false);
+			buf = put(channel, buf, out, true);
+
+			out.writeCount(series.length);
+			buf = put(channel, buf, out, false);
+
+			for (SeriesEntry entry : series) {
+				writeSeries(out, entry, index);
+
+				Record header = new Record();
+				header.writeCount(out.size());
+				buf = put(channel, buf, header, false);
+				buf = put(channel, buf, out, true);
+			} // end for
+
+			buf.flip();
+			while (buf.hasRemaining())
+				channel.write(buf);
+
+			// The new file has to be on disk before it takes the place of the old one
+			channel.force(true);
+			fos.close();
+			fos = null;
+
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			syncDirectory(file);
+		} // end try
+		finally {
+			if (fos != null) {
+				fos.close();
+				temp.delete();
+			}
+		} // end finally
+	} // end write
+
+	/***
+	 * Sync the directory a file is in, so a file moved or created there is still
+	 * there after a crash. Not every system can open a directory, there the move
+	 * is left to the file system.
+	 * @param file - A file in the directory
+	 */
+	static void syncDirectory(File file) {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir == null)
+			return;
+
+		try {
+			FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			}
+			finally {
+				channel.close();
+			}
+		} // end try
+		catch (IOException e) {
+			// Directories can not be opened on Windows
+		}
+	} // end syncDirectory
+
+	// Read the whole file through its channel
+	static ByteBuffer load(File file) throws IOException {
+		FileInputStream fis = new FileInputStream(file);
+
+		try {
+			FileChannel channel = fis.getChannel();
+
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large to be a cache file");
+
+			ByteBuffer buf = ByteBuffer.allocate((int)channel.size());
+
+			while (buf.hasRemaining() && channel.read(buf) >= 0);
+
+			buf.flip();
+			return buf;
+		}
+		finally {
+			fis.close();
+		}
+	} // end load
+
+	private static SeriesList readSerialized(ByteBuffer buf) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.array(), 0, buf.limit()));
+
+		try {
+			return (SeriesList)in.readObject();
+		}
+		catch (ClassCastException e) {
+			throw new IOException("The cache file does not hold a series list");
+		}
+		catch (RuntimeException e) {
+			throw new IOException("The cache file is corrupt: " + e);
+		}
+		finally {
+			in.close();
+		}
+	} // end readSerialized
+	
+	// Keep a damaged cache file beside it, the cache file is rewritten without what was lost
+	private static void keepCopy(File file) {
+		File copy = new File(file.getPath() + ".bad");
+
+		try {
+			Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			System.err.println("A copy of the damaged cache file was kept as " + copy);
+		}
+		catch (IOException e) {
+			System.err.println("Unable to keep a copy of the damaged cache file: " + e.getMessage());
+		}
+	} // end keepCopy
+
+	private static SeriesEntry readSeries(ByteBuffer buf, String[] strings) {
+		int aid = readInt(buf);
+		SeriesEntry series = new SeriesEntry(readString(buf), aid);
+
+		series.setPlot(readString(buf));
+		series.setThumbURL(readString(buf));
+		series.setRating(readInt(buf));
+
+		int genres = readSize(buf);
+		for (int i = 0; i < genres; i++) {
+			String genre = lookup(readCount(buf), strings);
+			if (genre != null)
+				series.addGenre(genre);
+		}
+
+		EpisodeEntry[] episodes = new EpisodeEntry[readSize(buf)];
+		for (int i = 0; i < episodes.length; i++) {
+			EpisodeEntry episode = new EpisodeEntry(readInt(buf));
+			int season = readInt(buf);
+			char type = (char)(buf.get() & 0xFF);
+
+			episode.setEpno(EpisodeEntry.formatEpno(type, readInt(buf)));
+			episode.setSeason(season);
+			episode.setLength(readInt(buf));
+			episode.setTitle(lookup(readCount(buf), strings));
+			episode.setAired(readLong(buf));
+			episodes[i] = episode;
+		} // end for
+		series.getEpisodes().addEpisodes(episodes);
+
+		return series;
+	} // end readSeries
+
+	private static void writeSeries(Record out, SeriesEntry series, HashMap<String, Integer> index) {
+		out.writeInt(series.getAID());
+		out.writeString(series.getTitle());
+		out.writeString(series.getPlot());
+		out.writeString(series.getThumb());
+		out.writeInt(Math.round(series.getRating() * 100));
+
+		String[] genres = series.getGenres();
+		out.writeCount(genres.length);
+		for (String genre : genres)
+			out.writeCount(stringIndex(genre, index));
+
+		EpisodeEntry[] episodes = series.getEpisodes().toArray();
+		out.writeCount(episodes.length);
+		for (EpisodeEntry episode : episodes) {
+			out.writeInt(episode.getEID());
+			out.writeInt(episode.getSeason());
+			out.writeByte(episode.getType());
+			out.writeInt(episode.getEpno());
+			out.writeInt(episode.getLength());
+			out.writeCount(stringIndex(episode.getTitle(), index));
+			out.writeLong(episode.getAired());
+		} // end for
+	} // end writeSeries
+
+	// Copy a record into the channel buffer, emptying it into the channel when full.
+	// The record is cleared, with its CRC32 after it if asked for.
+	private static ByteBuffer put(FileChannel channel, ByteBuffer buf, Record record, boolean crc) throws IOException {
+		int needed = record.size() + (crc ? 4 : 0);
+
+		if (needed > buf.remaining()) {
+			buf.flip();
+			while (buf.hasRemaining())
+				channel.write(buf);
+			buf.clear();
+
+			if (needed > buf.capacity())
+				buf = ByteBuffer.allocate(needed);
+		} // end if
+
+		buf.put(record.data, 0, record.size());
+		if (crc) {
+			CRC32 check = new CRC32();
+			check.update(record.data, 0, record.size());
+			buf.putInt((int)check.getValue());
+		}
+
+		record.clear();
+		return buf;
+	} // end put
+
+	static int crc(ByteBuffer buf, int from, int to) {
+		CRC32 check = new CRC32();
+
+		check.update(buf.array(), buf.arrayOffset() + from, to - from);
+		return (int)check.getValue();
+	} // end crc
+
+	private static String[] readStrings(ByteBuffer buf) {
+		String[] strings = new String[readSize(buf)];
+
+		for (int i = 0; i < strings.length; i++)
+			strings[i] = readString(buf);
+
+		return strings;
+	} // end readStrings
+
+	private static void addString(String value, HashMap<String, Integer> index, ArrayList<String> strings) {
+		if (value != null && !index.containsKey(value)) {
+			index.put(value, strings.size());
+			strings.add(value);
+		}
+	} // end addString
+
+	// Position of a string in the table + 1, 0 for null
+	private static int stringIndex(String value, HashMap<String, Integer> index) {
+		return (value == null) ? 0 : index.get(value) + 1;
+	} // end stringIndex
+
+	// Null for 0, and for strings from a damaged table that were dropped
+	private static String lookup(int number, String[] strings) {
+		return (number <= 0 || number > strings.length) ? null : strings[number - 1];
+	} // end lookup
+
+	static int readCount(ByteBuffer buf) {
+		int result = 0;
+
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = buf.get();
+			result |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return result;
+		} // end for
+
+		throw new IllegalStateException("Malformed number in the cache file");
+	} // end readCount
+
+	// A count of things that each take at least one byte, or a length in bytes,
+	// checked against what is left so a damaged one is not used to size an array
+	static int readSize(ByteBuffer buf) {
+		int result = readCount(buf);
+
+		if (result < 0 || result > buf.remaining())
+			throw new IllegalStateException("Count out of range in the cache file");
+
+		return result;
+	} // end readSize
+
+	static int readInt(ByteBuffer buf) {
+		int value = readCount(buf);
+		return (value >>> 1) ^ -(value & 1);
+	} // end readInt
+
+	static long readLong(ByteBuffer buf) {
+		long value = 0;
+
+		for (int shift = 0; shift < 70; shift += 7) {
+			byte b = buf.get();
+			value |= (long)(b & 0x7F) << shift;
+			if (b >= 0)
+				return (value >>> 1) ^ -(value & 1);
+		} // end for
+
+		throw new IllegalStateException("Malformed number in the cache file");
+	} // end readLong
+
+	static String readString(ByteBuffer buf) {
+		int length = readCount(buf);
+		if (length == 0)
+			return null;
+		if (length < 0 || length - 1 > buf.remaining())
+			throw new IllegalStateException("String length out of range in the cache file");
+
+		byte[] data = new byte[length - 1];
+		buf.get(data);
+		return new String(data, UTF8);
+	} // end readString
+
+	// A growing byte array that one record is encoded into
+	static class Record {
+		byte[]				data	= new byte[256];	// Encoded bytes
+		private int				size;						// Bytes used
+
+		void writeByte(int b) {
+			if (size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = (byte)b;
+		}
+
+		void writeCount(int value) {
+			while ((value & ~0x7F) != 0) {
+				writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+
+		void writeInt(int value) {
+			writeCount((value << 1) ^ (value >> 31));
+		}
+
+		void writeLong(long value) {
+			long zigzag = (value << 1) ^ (value >> 63);
+
+			while ((zigzag & ~0x7FL) != 0) {
+				writeByte((int)(zigzag & 0x7F) | 0x80);
+				zigzag >>>= 7;
+			}
+			writeByte((int)zigzag);
+		}
+
+		void writeString(String value) {
+			if (value == null) {
+				writeCount(0);
+				return;
+			}
+
+			byte[] bytes = value.getBytes(UTF8);
+			writeCount(bytes.length + 1);
+			for (byte b : bytes)
+				writeByte(b);
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+	} // end class Record
+
+} // end class CacheFile
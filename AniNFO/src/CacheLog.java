@@ -0,0 +1,468 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/***
+ * CacheLog - Keeps each series and episode fetched from AniDB on disk as soon as it
+ * is added to the cache, so a crash part way through a long run only loses the last
+ * moment of work. New entries are appended to a log beside the cache file and a
+ * writer thread commits them in batches, syncing the log once per batch. When the
+ * cache is opened the log is replayed over it, and the cache file is rewritten in
+ * the background so the log can start again empty.
+ *
+ * Log layout (numbers as in CacheFile):
+ *   int magic, int version (fixed width, big endian),
+ *   then per entry: record length, record, int CRC32 of the record
+ * A record is a byte naming the entry followed by its details:
+ *   SERIES: aid, title, plot, thumbnail, rating * 100, genre count, genres
+ *   EPISODE: aid, eid, season, byte type, epno, length, title, aired
+ *
+ * While the cache file is being rewritten the log is moved aside to a file ending
+ * in .old and entries carry on into a new log. The old log is removed once the new
+ * cache file is synced to disk and in place, and is replayed first if it is still
+ * there at startup.
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class CacheLog implements Runnable {
+	/*** CONSTANTS ***/
+	private static final int		MAGIC			=	0x414E434C;		// "ANCL"
+	private static final int		VERSION			=	1;				// Layout version
+	private static final int		HEADER			=	8;				// Bytes before the first record
+	private static final byte		SERIES			=	'A';			// Record holding a series
+	private static final byte		EPISODE			=	'E';			// Record holding an episode
+	private static final long		COMMIT_INTERVAL	=	1000;			// Most ms an entry waits to be synced
+	private static final long		COMPACT_SIZE	=	1 << 20;		// Log size that starts a rewrite of the cache file
+
+	/*** CLASS DATA MEMBERS ***/
+	// Entries are encoded into the pending batch by whichever thread adds them. Only the
+	// writer thread touches the log files until close() has stopped it.
+	private File					logFile;		// Log of entries since the cache file was written
+	private File					oldFile;		// Log moved aside while the cache file is rewritten
+	private File					cacheFile;		// Cache file the log is compacted into
+	private SeriesList				cache;			// Cache the entries were added to
+	private FileChannel				channel;		// Open log, null if it could not be opened
+	private long					committed;		// Log size after the last batch that was synced
+	private CacheFile.Record		pending;		// Entries waiting for the next batch
+	private boolean					compact;		// Rewrite the cache file at the next chance
+	private boolean					closing;		// Commit what is pending and stop
+	private Thread					writer;			// Thread committing batches
+
+	/***
+	 * Open the log for a cache, replaying any entries left in it from an earlier run
+	 * into the cache. If there were some, the cache file is rewritten in the background.
+	 * @param log - The log file
+	 * @param file - The cache file the cache was read from
+	 * @param series - The cache read from the file
+	 */
+	public CacheLog(File log, File file, SeriesList series) {
+		logFile = log;
+		oldFile = new File(log.getPath() + ".old");
+		cacheFile = file;
+		cache = series;
+		pending = new CacheFile.Record();
+
+		try {
+			long valid = -1;
+
+			// A log left aside by an unfinished rewrite is older than the current log
+			if (oldFile.exists()) {
+				long oldValid = replay(oldFile);
+
+				// Records go on the end of it later, so drop anything after the last whole one
+				if (oldValid < HEADER) {
+					oldFile.delete();
+				}
+				else {
+					FileChannel old = FileChannel.open(oldFile.toPath(), StandardOpenOption.WRITE);
+					try {
+						old.truncate(oldValid);
+					}
+					finally {
+						old.close();
+					}
+				} // end else
+			} // end if
+
+			if (logFile.exists())
+				valid = replay(logFile);
+
+			channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+			// Drop a record cut short by a crash, or the whole log if it is not one
+			if (valid < HEADER) {
+				channel.truncate(0);
+				channel.write(header());
+				channel.force(false);
+				CacheFile.syncDirectory(logFile);
+			}
+			else {
+				channel.truncate(valid);
+			}
+
+			committed = channel.size();
+			channel.position(committed);
+			compact = oldFile.exists() || valid > HEADER;
+		} // end try
+		catch (IOException e) {
+			System.err.println("Unable to open the cache log, fetched details will only be saved on exit: " + e.getMessage());
+			channel = null;
+		}
+
+		writer = new Thread(this, "Cache log");
+		writer.setDaemon(true);
+		writer.start();
+	} // end CacheLog
+
+	/***
+	 * Log a series that was just added to the cache. The series should be filled in and
+	 * added to the cache before it is logged.
+	 * @param series - The series
+	 */
+	public synchronized void addSeries(SeriesEntry series) {
+		CacheFile.Record out = new CacheFile.Record();
+		String[] genres = series.getGenres();
+
+		out.writeByte(SERIES);
+		out.writeInt(series.getAID());
+		out.writeString(series.getTitle());
+		out.writeString(series.getPlot());
+		out.writeString(series.getThumb());
+		out.writeInt(Math.round(series.getRating() * 100));
+		out.writeCount(genres.length);
+		for (String genre : genres)
+			out.writeString(genre);
+
+		append(out);
+	} // end addSeries
+
+	/***
+	 * Log an episode that was just added to the cache. The episode should be filled in
+	 * and added to its series before it is logged.
+	 * @param aid - AniDB ID of the series the episode belongs to
+	 * @param episode - The episode
+	 */
+	public synchronized void addEpisode(int aid, EpisodeEntry episode) {
+		CacheFile.Record out = new CacheFile.Record();
+
+		out.writeByte(EPISODE);
+		out.writeInt(aid);
+		out.writeInt(episode.getEID());
+		out.writeInt(episode.getSeason());
+		out.writeByte(episode.getType());
+		out.writeInt(episode.getEpno());
+		out.writeInt(episode.getLength());
+		out.writeString(episode.getTitle());
+		out.writeLong(episode.getAired());
+
+		append(out);
+	} // end addEpisode
+
+	/***
+	 * Commit what is left in the log, write the whole cache to the cache file and
+	 * remove the log. If the cache file can not be written the log is kept, so the
+	 * entries in it are replayed the next time the cache is opened.
+	 * @throws IOException if the cache file could not be written
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			closing = true;
+			notifyAll();
+		}
+
+		// Let the writer finish any rewrite it started and commit the last batch
+		boolean interrupted = false;
+		while (writer.isAlive()) {
+			try {
+				writer.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		} // end while
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (channel != null)
+			channel.close();
+
+		// The cache file and its directory are synced once it is written, the logs can go after
+		CacheFile.write(cacheFile, cache);
+		logFile.delete();
+		oldFile.delete();
+	} // end close
+
+	/***
+	 * Commit pending entries once per interval, and rewrite the cache file when asked
+	 * to or when the log has grown large. Runs on the writer thread.
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			CacheFile.Record batch;
+			boolean rewrite;
+			boolean stop;
+
+			synchronized (this) {
+				try {
+					while (pending.size() == 0 && !compact && !closing)
+						wait();
+
+					// Let the entries added during the interval join this batch
+					long end = System.currentTimeMillis() + COMMIT_INTERVAL;
+					long left;
+					while (pending.size() > 0 && !closing && (left = end - System.currentTimeMillis()) > 0)
+						wait(left);
+				} // end try
+				catch (InterruptedException e) {
+					closing = true;
+				}
+
+				batch = pending;
+				pending = new CacheFile.Record();
+				rewrite = compact && !closing;
+				compact = false;
+				stop = closing;
+			} // end synchronized
+
+			commit(batch);
+
+			if (channel != null && (rewrite || committed > COMPACT_SIZE) && !stop)
+				compact();
+
+			if (stop)
+				return;
+		} // end while
+	} // end run
+
+	// Add an encoded entry to the pending batch with its length and checksum
+	private void append(CacheFile.Record out) {
+		ByteBuffer record = ByteBuffer.wrap(out.data, 0, out.size());
+		CacheFile.Record header = new CacheFile.Record();
+		int crc = CacheFile.crc(record, 0, out.size());
+
+		header.writeCount(out.size());
+		for (int i = 0; i < header.size(); i++)
+			pending.writeByte(header.data[i]);
+		for (int i = 0; i < out.size(); i++)
+			pending.writeByte(out.data[i]);
+		for (int shift = 24; shift >= 0; shift -= 8)
+			pending.writeByte(crc >>> shift);
+
+		notifyAll();
+	} // end append
+
+	// Write a batch to the log and sync it, the log is cut back to the last batch on failure
+	private void commit(CacheFile.Record batch) {
+		if (channel == null || batch.size() == 0)
+			return;
+
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(batch.data, 0, batch.size());
+			while (buf.hasRemaining())
+				channel.write(buf);
+			channel.force(false);
+			committed = channel.position();
+		}
+		catch (IOException e) {
+			System.err.println("Unable to write to the cache log: " + e.getMessage());
+
+			try {
+				channel.truncate(committed);
+				channel.position(committed);
+			}
+			catch (IOException f) {
+				System.err.println(f.getMessage());
+			}
+		} // end catch
+	} // end commit
+
+	// Move the log aside, start a new one and write the cache file. Everything in the
+	// old log is already in the cache, so it can go once the cache file is in place.
+	private void compact() {
+		try {
+			channel.close();
+			channel = null;
+
+			if (oldFile.exists()) {
+				// A rewrite that failed earlier left its log, add this one to the end of it
+				FileChannel from = FileChannel.open(logFile.toPath(), StandardOpenOption.READ);
+				FileChannel to = FileChannel.open(oldFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+				try {
+					long position = HEADER;
+					long size = from.size();
+					while (position < size)
+						position += from.transferTo(position, size - position, to);
+					to.force(false);
+				}
+				finally {
+					from.close();
+					to.close();
+				}
+			} // end if
+			else {
+				Files.move(logFile.toPath(), oldFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				CacheFile.syncDirectory(oldFile);
+			}
+
+			channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			channel.write(header());
+			channel.force(false);
+			CacheFile.syncDirectory(logFile);
+			committed = channel.position();
+
+			// The cache file and its directory are synced once it is written, the old log can go after
+			CacheFile.write(cacheFile, cache);
+			oldFile.delete();
+		} // end try
+		catch (IOException e) {
+			System.err.println("Unable to rewrite the cache file: " + e.getMessage());
+
+			// Keep logging if the log itself is the problem
+			if (channel == null) {
+				try {
+					channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					committed = channel.size();
+					channel.position(committed);
+
+					if (committed < HEADER) {
+						channel.truncate(0);
+						channel.write(header());
+						committed = channel.position();
+					}
+				} // end try
+				catch (IOException f) {
+					System.err.println("Unable to open the cache log: " + f.getMessage());
+					channel = null;
+				}
+			} // end if
+		} // end catch
+	} // end compact
+
+	// Apply the entries in a log to the cache, returning where the last whole record
+	// ends, or -1 if the file is not a cache log
+	private long replay(File file) throws IOException {
+		ByteBuffer buf = CacheFile.load(file);
+		ArrayList<SeriesEntry> added = new ArrayList<SeriesEntry>();	// Series new to the cache
+		IntHashMap<SeriesEntry> series = new IntHashMap<SeriesEntry>();	// Series new to the cache by aid
+		int valid;
+
+		if (buf.remaining() < HEADER || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+			System.err.println("Ignoring " + file + ", it is not a cache log");
+			return -1;
+		}
+
+		valid = buf.position();
+
+		try {
+			while (buf.hasRemaining()) {
+				int length = CacheFile.readCount(buf);
+				int from = buf.position();
+
+				if (length > buf.remaining() - 4)
+					break;
+
+				buf.position(from + length);
+				if (CacheFile.crc(buf, from, from + length) != buf.getInt())
+					break;
+
+				ByteBuffer record = buf.duplicate();
+				record.position(from);
+				record.limit(from + length);
+
+				try {
+					apply(record, added, series);
+				}
+				catch (RuntimeException e) {
+					System.err.println("Skipping a damaged entry in " + file);
+				}
+
+				valid = buf.position();
+			} // end while
+		} // end try
+		catch (BufferUnderflowException e) {
+			// The last record was cut short
+		}
+		catch (IllegalStateException e) {
+			// The last record length was cut short
+		}
+
+		if (valid < buf.limit())
+			System.err.println("Dropping " + (buf.limit() - valid) + " bytes cut short at the end of " + file);
+
+		cache.addAllSeries(added);
+		return valid;
+	} // end replay
+
+	// Apply one record, series new to the cache are collected to be added together
+	private void apply(ByteBuffer record, ArrayList<SeriesEntry> added, IntHashMap<SeriesEntry> series) {
+		byte kind = record.get();
+		int aid = CacheFile.readInt(record);
+		SeriesEntry entry = cache.getSeries(aid);
+
+		if (entry == null)
+			entry = series.get(aid);
+
+		if (kind == SERIES) {
+			SeriesEntry temp = new SeriesEntry(CacheFile.readString(record), aid);
+
+			temp.setPlot(CacheFile.readString(record));
+			temp.setThumbURL(CacheFile.readString(record));
+			temp.setRating(CacheFile.readInt(record));
+
+			int genres = CacheFile.readCount(record);
+			for (int i = 0; i < genres; i++)
+				temp.addGenre(CacheFile.readString(record));
+
+			// The first copy of a series is kept, as in the cache
+			if (entry == null && aid != -1) {
+				added.add(temp);
+				series.put(aid, temp);
+			}
+		} // end if
+		else if (kind == EPISODE) {
+			EpisodeEntry episode = new EpisodeEntry(CacheFile.readInt(record));
+			int season = CacheFile.readInt(record);
+			char type = (char)(record.get() & 0xFF);
+
+			episode.setEpno(EpisodeEntry.formatEpno(type, CacheFile.readInt(record)));
+			episode.setSeason(season);
+			episode.setLength(CacheFile.readInt(record));
+			episode.setTitle(CacheFile.readString(record));
+			episode.setAired(CacheFile.readLong(record));
+
+			if (entry != null)
+				entry.getEpisodes().addEpisode(episode);
+		} // end else if
+	} // end apply
+
+	private static ByteBuffer header() {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER);
+
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.flip();
+		return buf;
+	} // end header
+} // end class CacheLog
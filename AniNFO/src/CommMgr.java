@@ -210,11 +210,22 @@ public class CommMgr {
 	} // end sendAnime
 	
 	public static AniPacket sendEpisode(int aid, int epno) {
+		return sendEpisode(aid, String.valueOf(epno));
+	} // end sendEpisode
+	
+	/***
+	 * Request an episode by its number as AniDB writes it, with the type
+	 * letter in front for specials such as "S2".
+	 * @param aid - AniDB ID of the series
+	 * @param epno - Episode number
+	 * @return The response packet
+	 */
+	public static AniPacket sendEpisode(int aid, String epno) {
 		AniPacket response;			// The response packet
 		String msg;					// The packet info to send
 		
 		msg = "aid=" + String.valueOf(aid);
-		msg += "&epno=" + String.valueOf(epno);
+		msg += "&epno=" + epno;
 		msg += "&s=" + sessionID;
 		
 		response = sendPacket("EPISODE", msg);
@@ -47,6 +47,9 @@ public class ConfigMgr {
 	private static String			pass			=		"";				// AniDB Password
 	private static boolean			firstLoad		=		true;			// First time loading the application
 	private static String			defaultPath		=		"";				// The default path to open file dialogs to
+	private static String			titleLanguages	=		"";				// Languages of titles to load, blank for all
+	private static String			titleTypes		=		"official,short";	// Types of titles to load besides the main title
+	private static boolean			titleDat		=		false;			// Download the .dat titles dump instead of the XML
 	
 	/***
 	 * Returns formatted string for the application version.
@@ -166,6 +169,44 @@ public class ConfigMgr {
 		return defaultPath;
 	}
 	
+	/***
+	 * Set the languages of the titles kept when loading the anime titles.
+	 * @param langs - Comma separated language codes such as "x-jat,en,ja", blank for all
+	 */
+	public static void setTitleLanguages(String langs) {
+		titleLanguages = langs.trim();
+	} // end setTitleLanguages
+	
+	public static String getTitleLanguages() {
+		return titleLanguages;
+	} // end getTitleLanguages
+	
+	/***
+	 * Set the types of titles kept when loading the anime titles. The main
+	 * title is always kept.
+	 * @param types - Comma separated list of "official" and "short"
+	 */
+	public static void setTitleTypes(String types) {
+		titleTypes = types.trim();
+	} // end setTitleTypes
+	
+	public static String getTitleTypes() {
+		return titleTypes;
+	} // end getTitleTypes
+	
+	/***
+	 * Choose which of the AniDB title dumps is downloaded. Either one can be
+	 * loaded, the .dat dump is quicker to read.
+	 * @param on - true for anime-titles.dat, false for animetitles.xml
+	 */
+	public static void setTitleDat(boolean on) {
+		titleDat = on;
+	} // end setTitleDat
+	
+	public static boolean isTitleDat() {
+		return titleDat;
+	} // end isTitleDat
+	
 	public static int loadConfig() {
 		int result = SUCCESS;
 		
@@ -186,6 +227,22 @@ public class ConfigMgr {
 				firstLoad = in.readBoolean();
 				defaultPath = in.readUTF();
 				
+				// Values added after the first version, older files end here
+				try {
+					titleLanguages = in.readUTF();
+					titleTypes = in.readUTF();
+				}
+				catch (EOFException e) {
+					titleLanguages = "";
+					titleTypes = "official,short";
+				}
+				try {
+					titleDat = in.readBoolean();
+				}
+				catch (EOFException e) {
+					titleDat = false;
+				}
+				
 				// Close the file
 				in.close();
 				fis.close();
@@ -198,6 +255,9 @@ public class ConfigMgr {
 				pass = "";
 				firstLoad = true;
 				defaultPath = "";
+				titleLanguages = "";
+				titleTypes = "official,short";
+				titleDat = false;
 				
 				// Create a config.dat file
 				saveConfig();
@@ -217,6 +277,9 @@ public class ConfigMgr {
 			pass = "";
 			firstLoad = true;
 			defaultPath = "";
+			titleLanguages = "";
+			titleTypes = "official,short";
+			titleDat = false;
 			
 			// Create config.dat file
 			saveConfig();
@@ -242,6 +305,9 @@ public class ConfigMgr {
 			out.writeUTF(pass);
 			out.writeBoolean(firstLoad);
 			out.writeUTF(defaultPath);
+			out.writeUTF(titleLanguages);
+			out.writeUTF(titleTypes);
+			out.writeBoolean(titleDat);
 			
 			// Close the files
 			out.flush();
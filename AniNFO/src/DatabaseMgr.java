@@ -1,29 +1,47 @@
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPInputStream;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
+import javax.xml.XMLConstants;
+import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /***
  * DatabaseMgr - This static class is used to manage the XML database file from
  * AniDB. Use it to check if the database is upto date, download
- * the current daily dump file and ungzip the dump to the
- * xml file.
+ * the current daily dump file and load the titles from it. Only the
+ * compressed dump is kept on disk, it is ungzipped while it is read.
+ * Either the XML dump or the line based anime-titles.dat dump can be used,
+ * the format is told apart by the first character of the file.
  * 
  * Copyright (C) 2011  Chris Workman
  *
@@ -47,147 +65,931 @@ public class DatabaseMgr {
 	public final static int UNREADABLE_FILE		= 	-2;			// File IO error
 	public final static int FILE_NOT_FOUND		= 	-3;			// File was not found
 	public final static int	PARSER_ERROR		=	-4;			// Parser Configuration Error
-	public final static int	BAD_XML				= 	-5;			// Error in the XML format
+	public final static int	BAD_XML				= 	-5;			// Error in the XML or .dat format
+	public final static int	NOT_MODIFIED		=	1;			// The dump has not changed since the last download
 	
-	public final static int	BUFFER				= 	1024;		// Buffer size for file IO
+	public final static int	BUFFER				= 	65536;		// Buffer size for file IO
 	
 	private static final String ANIDB = "http://anidb.net/api/animetitles.xml.gz";
-	private static final String OUTDB = "animetitles.xml";
+	private static final String ANIDB_DAT = "http://anidb.net/api/anime-titles.dat.gz";
+	private static final String OUTDB = "animetitles.xml.gz";
+	private static final String OUTDAT = "anime-titles.dat.gz";	// The .dat dump, stored apart from the XML one
+	private static final String OLDDB = "animetitles.xml";		// Uncompressed dump from older versions
+	private static final String SNAPDB = "animetitles.idx";		// Binary snapshot of the titles parsed from the XML dump
+	private static final String SNAPDAT = "anime-titles.idx";	// Binary snapshot of the titles parsed from the .dat dump
+	private static final String PART = ".part";					// Suffix for a download in progress
+	private static final String META = ".meta";					// Suffix for stored ETag and Last-Modified
+	private static final int	TIMEOUT = 30000;				// Connect and read timeout in ms
+	private static final int	HTTP_RANGE_NOT_SATISFIABLE = 416;
+	private static final int	RESTART = 2;					// A partial download was dropped, download again
+	private static final int	ATTEMPTS = 2;					// Most downloads tried in one update
+	private static final int	CHUNKS_PER_THREAD = 4;			// Chunks per core when parsing in parallel
+	private static final byte[] ANIME_START = { '<', 'a', 'n', 'i', 'm', 'e' };
+	private static final byte[] ROOT_START = "<animetitles>".getBytes();
+	private static final byte[] ROOT_END = "</animetitles>".getBytes();
 
 	/*** CLASS DATA MEMBERS ***/
-	private static AnimeTitles	animeTitles;
+	// The loaded titles. Updates build a new AnimeTitles and swap it in, so
+	// searches running on another thread always see a complete list.
+	private static final AtomicReference<AnimeTitles>	animeTitles = new AtomicReference<AnimeTitles>();
+	private static volatile TitleDelta					lastDelta;		// Changes made by the last update
+	private static final ForkJoinPool					pool = new ForkJoinPool();	// Shared by loading and searching
 	
 	public static boolean isCurrent() {
-		File file = new File(OUTDB);
+		File file = getDumpFile();
+		File meta = new File(file.getPath() + META);		// Touched when the server says the dump is unchanged
 		
-		return ((System.currentTimeMillis() - file.lastModified()) < 86400000);
+		return ((System.currentTimeMillis() - Math.max(file.lastModified(), meta.lastModified())) < 86400000);
 	}
 	
 	public static int getUpdatedDatabase() {
-		// Try downloading the compressed database from ANIDB url 
-		// then uncompress it to the XML file
+		return getUpdatedDatabase(ConfigMgr.isTitleDat() ? ANIDB_DAT : ANIDB);
+	} // end getUpdatedDatabase
+	
+	/***
+	 * Downloads the compressed database from the given url and loads the titles from it
+	 * in a single pass. The download is ungzipped and parsed as it arrives while the
+	 * compressed bytes are written to disk for the next start.
+	 * 
+	 * Over HTTP the request is conditional on the ETag and Last-Modified of the stored
+	 * dump, and a partial download left by a dropped connection is resumed with a range
+	 * request. The stored dump is only replaced once the whole download has arrived,
+	 * passed the gzip check and parsed.
+	 * 
+	 * This can run on a background thread, the titles returned by getTitles stay
+	 * usable until the updated titles replace them.
+	 * 
+	 * The download is stored as the dump of the source chosen in the configuration,
+	 * so the url should be one of that format.
+	 * @param url - Location of the gzipped animetitles XML or anime-titles.dat
+	 * @return SUCCESS, NOT_MODIFIED or an error code
+	 */
+	public static synchronized int getUpdatedDatabase(String url) {
+		int result = RESTART;
+		
+		// A partial download the server will not resume is dropped and downloaded again once
+		for (int attempt = 0; attempt < ATTEMPTS && result == RESTART; attempt++)
+			result = download(url, getDumpFile());
+		
+		if (result == RESTART) {
+			System.err.println("The server would not send the titles dump from the start");
+			result = UNREADABLE_FILE;
+		}
+		
+		return result;
+	} // end getUpdatedDatabase
+	
+	// Download and load the titles once, RESTART if a partial download had to be dropped
+	private static int download(String url, File dump) {
+		File part = new File(dump.getPath() + PART);
+		File partMeta = new File(part.getPath() + META);
+		File dumpMeta = new File(dump.getPath() + META);
+		InputStream in = null;
+		OutputStream out = null;
+		TeeInputStream tee = null;
+		TitleFilter filter = TitleFilter.fromConfig();
+		AnimeTitles titles;
+		long expected = -1;		// Size of the complete file, -1 if unknown
+		
 		try {
-			// Open an input stream from the URL provided
-			URL siteURL = new URL(ANIDB);
-			InputStream site = siteURL.openStream();
-			BufferedInputStream in = new BufferedInputStream(site);
-			
-			// Open an output stream to the provided filename
-			String gzfile = ANIDB.substring(ANIDB.lastIndexOf('/')+1,ANIDB.length());
-			FileOutputStream fos = new FileOutputStream(gzfile);
-			BufferedOutputStream out = new BufferedOutputStream(fos,BUFFER);
-			
-			byte[] data = new byte[BUFFER];		// Data read from the file
-			int bits = 0;						// Number of bits read
-			
-			// Read from the file until reaching the end
-			// Write the read data to the output file
-			while ((bits = in.read(data,0,BUFFER)) >= 0) {
-				out.write(data,0,bits);
-			} // end while
+			URLConnection conn = new URL(url).openConnection();
+			conn.setConnectTimeout(TIMEOUT);
+			conn.setReadTimeout(TIMEOUT);
+			long offset = 0;		// Bytes already downloaded
+			
+			if (conn instanceof HttpURLConnection) {
+				HttpURLConnection http = (HttpURLConnection)conn;
+				String[] stored = readMeta(dumpMeta);		// Validators of the stored dump
+				String[] partial = readMeta(partMeta);					// Validators of the partial download
+				
+				// Only ask for changes when there is a dump to fall back on, and only with
+				// validators that came from the same url
+				if (dump.exists() && stored[2].equals(url)) {
+					if (stored[0].length() > 0)
+						http.setRequestProperty("If-None-Match", stored[0]);
+					if (stored[1].length() > 0)
+						http.setRequestProperty("If-Modified-Since", stored[1]);
+				} // end if
+				
+				// Resume a partial download, If-Range makes sure it is still the same file
+				String validator = (partial[0].length() > 0) ? partial[0] : partial[1];
+				if (part.length() > 0 && validator.length() > 0 && partial[2].equals(url)) {
+					offset = part.length();
+					http.setRequestProperty("Range", "bytes=" + offset + "-");
+					http.setRequestProperty("If-Range", validator);
+				} // end if
+				
+				int code = http.getResponseCode();
+				
+				if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					// The stored dump is still current, a partial download can only be older.
+					// The dump itself is left alone so the snapshot made from it stays usable.
+					http.disconnect();
+					dumpMeta.setLastModified(System.currentTimeMillis());
+					part.delete();
+					partMeta.delete();
+					lastDelta = new TitleDelta();
+					return NOT_MODIFIED;
+				} // end NOT_MODIFIED
+				else if (code == HTTP_RANGE_NOT_SATISFIABLE) {
+					// The partial download does not fit the file on the server, start over
+					http.disconnect();
+					part.delete();
+					partMeta.delete();
+					return RESTART;
+				} // end RANGE_NOT_SATISFIABLE
+				else if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+					http.disconnect();
+					return FILE_NOT_FOUND;
+				} // end NOT_FOUND
+				else if (code == HttpURLConnection.HTTP_OK) {
+					// Full download, remember what it is in case it has to be resumed
+					offset = 0;
+					writeMeta(partMeta, url, http.getHeaderField("ETag"), http.getHeaderField("Last-Modified"));
+				} // end OK
+				else if (code == HttpURLConnection.HTTP_PARTIAL && rangeStart(http.getHeaderField("Content-Range")) != offset) {
+					// The server sent some other part of the file, appending it would splice in the wrong bytes
+					System.err.println("Server sent " + http.getHeaderField("Content-Range") + " for a download at " + offset);
+					http.disconnect();
+					part.delete();
+					partMeta.delete();
+					
+					if (offset == 0)
+						return UNREADABLE_FILE;
+					return RESTART;
+				} // end PARTIAL
+				else if (code != HttpURLConnection.HTTP_PARTIAL) {
+					System.err.println("Unexpected response: " + code);
+					http.disconnect();
+					return UNREADABLE_FILE;
+				} // end else
+			} // end if http
+			
+			// Copy everything read to the part file, after what is already there
+			if (conn.getContentLengthLong() >= 0)
+				expected = offset + conn.getContentLengthLong();
+			out = new BufferedOutputStream(new FileOutputStream(part, offset > 0), BUFFER);
+			tee = new TeeInputStream(new BufferedInputStream(conn.getInputStream(), BUFFER), out);
+			in = tee;
+			
+			// When resuming, the part already on disk is read before the rest of the download
+			if (offset > 0)
+				in = new SequenceInputStream(new LimitedInputStream(new FileInputStream(part), offset), in);
+			
+			// Ungzip and parse the titles as the download arrives
+			GZIPInputStream zin = new GZIPInputStream(in, BUFFER);
+			titles = parseDump(new BufferedInputStream(zin, BUFFER), filter);
+			
+			// Read to the end so the gzip trailer is checked and written out
+			drain(zin);
+			drain(in);
 			
 			// Close the files
-			out.close();
 			in.close();
+			in = null;
+			out.close();
+			out = null;
 			
-			// Open the compressed database file
-			FileInputStream fis = new FileInputStream(gzfile);
-			GZIPInputStream zin = new GZIPInputStream(fis);
-								
-			// Read the entries from the archive
-			bits = 0;
-								
-			// Open file to write uncompressed database to
-			FileOutputStream xml = new FileOutputStream(OUTDB);
-								
-			while ((bits = zin.read(data)) != -1) {
-				// While there is data in the buffer, write it to the output file
-				xml.write(data,0,bits);
-			}
-
-			// Close the files
-			xml.close();
-			zin.close();
-										
-			// Clean up compressed file
-			File f = new File(gzfile);
-			f.delete();
+			// Verify the whole file arrived before it replaces the stored dump
+			if (expected >= 0 && part.length() != expected)
+				throw new IOException("Download incomplete: " + part.length() + " of " + expected + " bytes");
+			
+			// Replace the stored dump and remove the uncompressed one left by older versions
+			Files.move(part.toPath(), dump.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			new File(OLDDB).delete();
+			if (partMeta.exists())
+				Files.move(partMeta.toPath(), dumpMeta.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			else
+				dumpMeta.delete();
+			
+			// Snapshot the new titles for the next start
+			writeSnapshot(dump, filter, titles);
 		} // end try
 		catch (FileNotFoundException e) {
 			System.err.println(e.getMessage());
-			return FILE_NOT_FOUND;
+			return downloadFailed(part, in, out, tee, expected, FILE_NOT_FOUND);
 		}
 		catch (MalformedURLException e) {
 			System.err.println(e.getMessage());
-			return INVALID_URL;
+			return downloadFailed(part, in, out, tee, expected, INVALID_URL);
 		} // end catch URL
 		catch (IOException e) {
 			System.err.println(e.getMessage());
-			return UNREADABLE_FILE;
+			return downloadFailed(part, in, out, tee, expected, UNREADABLE_FILE);
 		} // end IOE
-						
+		catch (FactoryConfigurationError e) {
+			return downloadFailed(part, in, out, tee, expected, PARSER_ERROR);
+		} // end FactoryConfigurationError
+		catch (XMLStreamException e) {
+			return downloadFailed(part, in, out, tee, expected, BAD_XML);
+		} // end XMLStreamException
+		catch (NumberFormatException e) {
+			return downloadFailed(part, in, out, tee, expected, BAD_XML);
+		} // end NumberFormatException
+		catch (ParseException e) {
+			System.err.println(e.getMessage());
+			return downloadFailed(part, in, out, tee, expected, BAD_XML);
+		} // end ParseException
+		
+		// Only apply what changed to a copy of the loaded titles, then swap it in
+		AnimeTitles current = animeTitles.get();
+		
+		if (current == null) {
+			lastDelta = null;
+			publish(titles);
+		}
+		else {
+			TitleDelta delta = TitleDelta.compare(current, titles);
+			AnimeTitles updated = current.copy();
+			updated.apply(delta);
+			
+			lastDelta = delta;
+			publish(updated);
+			System.out.println("Anime titles updated: " + delta);
+		} // end else
+		
 		return SUCCESS;
-	} // end getUpdatedDatabse
+	} // end download
+	
+	// Index the titles for searching unless an update kept the index, then make them the loaded titles
+	private static void publish(AnimeTitles titles) {
+		if (!titles.isIndexed())
+			titles.buildIndex();
+		animeTitles.set(titles);
+	} // end publish
+	
+	// The stored dump of the source chosen in the configuration
+	private static File getDumpFile() {
+		return new File(ConfigMgr.isTitleDat() ? OUTDAT : OUTDB);
+	} // end getDumpFile
+	
+	// The dump to load the titles from, the other format until the chosen one is downloaded
+	private static File getStoredDump() {
+		File file = getDumpFile();
+		File other = new File(ConfigMgr.isTitleDat() ? OUTDB : OUTDAT);
+		
+		return (!file.exists() && other.exists()) ? other : file;
+	} // end getStoredDump
+	
+	// Each dump has its own snapshot so changing the source does not throw the other one away
+	private static File getSnapshotFile(File dump) {
+		return new File(dump.getName().equals(OUTDAT) ? SNAPDAT : SNAPDB);
+	} // end getSnapshotFile
+	
+	private static void writeSnapshot(File dump, TitleFilter filter, AnimeTitles titles) {
+		String etag = readMeta(new File(dump.getPath() + META))[0];
+		
+		if (!TitleSnapshot.write(getSnapshotFile(dump), dump, etag, filter.toString(), titles))
+			System.err.println("Unable to write the title snapshot, the titles dump will be read again on the next start");
+	} // end writeSnapshot
+	
+	private static int downloadFailed(File part, InputStream in, OutputStream out, TeeInputStream tee, long expected, int code) {
+		close(in);
+		
+		try {
+			if (out != null)
+				out.close();
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+		}
+		
+		// If the connection ended before the whole file arrived, whatever else went
+		// wrong came from the missing data. Keep what arrived so it can be resumed.
+		if (tee != null && tee.isFinished() && expected >= 0 && part.length() < expected) {
+			System.err.println("Download interrupted after " + part.length() + " of " + expected + " bytes");
+			return UNREADABLE_FILE;
+		} // end if
+		
+		// Clean up a partial download that can not be resumed
+		part.delete();
+		new File(part.getPath() + META).delete();
+		
+		return code;
+	} // end downloadFailed
 	
-	public static int loadTitles() {
-		animeTitles = new AnimeTitles();
+	// Read the ETag, Last-Modified and url stored for a download, empty strings if unknown
+	private static String[] readMeta(File file) {
+		String[] meta = { "", "", "" };
 		
-		// Open the xml file
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		if (!file.exists())
+			return meta;
 		
 		try {
-			// Create the document builder and parse the file.
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document xmlfile = db.parse(OUTDB);
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
 			
-			// Get root node
-			xmlfile.getDocumentElement().normalize();
+			try {
+				meta[0] = in.readUTF();
+				meta[1] = in.readUTF();
+				meta[2] = in.readUTF();
+			}
+			finally {
+				in.close();
+			}
+		} // end try
+		catch (IOException e) {
+			// Files from older versions have no url, their validators can not be trusted
+			meta[0] = "";
+			meta[1] = "";
+			meta[2] = "";
+		} // end IOException
+		
+		return meta;
+	} // end readMeta
+	
+	private static void writeMeta(File file, String url, String etag, String modified) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		
+		try {
+			out.writeUTF(etag == null ? "" : etag);
+			out.writeUTF(modified == null ? "" : modified);
+			out.writeUTF(url);
+		}
+		finally {
+			out.close();
+		}
+	} // end writeMeta
+	
+	// First byte of a "bytes first-last/length" Content-Range, -1 if there is none
+	private static long rangeStart(String range) {
+		if (range == null || !range.startsWith("bytes "))
+			return -1;
+		
+		int dash = range.indexOf('-');
+		if (dash < 0)
+			return -1;
+		
+		try {
+			return Long.parseLong(range.substring(6, dash).trim());
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	} // end rangeStart
+	
+	private static void drain(InputStream in) throws IOException {
+		byte[] data = new byte[BUFFER];
+		
+		while (in.read(data) >= 0) {
+			// discard
+		}
+	} // end drain
+	
+	/***
+	 * Loads the titles from the stored dump, keeping the titles allowed by the
+	 * language and type filter in the configuration.
+	 * @return SUCCESS or an error code
+	 */
+	public static synchronized int loadTitles() {
+		TitleFilter filter = TitleFilter.fromConfig();
+		InputStream in = null;
+		
+		try {
+			File file = getStoredDump();
 			
-			// Get list of aID nodes
-			NodeList nodes = xmlfile.getElementsByTagName("anime");
+			// Older versions left the dump uncompressed, there is no snapshot for those
+			if (!file.exists() && new File(OLDDB).exists()) {
+				File old = new File(OLDDB);
+				in = new FileInputStream(old);
+				publish(loadTitles(in, old.length(), filter));
+				return SUCCESS;
+			} // end if OLDDB
 			
-			// Process each anime node
-			for (int i = 0; i < nodes.getLength(); i++) {
-				Element anime = (Element)nodes.item(i);
-
-				// Get the aID and create the AnimeTitle object from it
-				String aid = anime.getAttribute("aid");
-				AnimeTitle animeTitle = new AnimeTitle(Integer.parseInt(aid));
-				
-				// Get list of titles for this anime
-				NodeList titleNodes = anime.getElementsByTagName("title");
-				
-				for (int n = 0; n < titleNodes.getLength(); n++) {
-					Element node = (Element)titleNodes.item(n);
-					String type = node.getAttribute("type");
-					String temp = node.getTextContent();
-					
-					if (type.compareToIgnoreCase("main") == 0)
-						animeTitle.setMainTitle(temp);
-					else if (type.compareToIgnoreCase("official") == 0)
-						animeTitle.addOfficialTitle(temp);
-					else if (type.compareToIgnoreCase("short") == 0)
-						animeTitle.addShortTitle(temp);
-				} // end for title
-				
-				// Add the title object to the list
-				animeTitles.add(animeTitle);
-			} // end for anime
+			// Use the snapshot if it was built from this dump with the same filter. The titles
+			// can be searched straight away, the first search waits for the index.
+			AnimeTitles titles = TitleSnapshot.read(getSnapshotFile(file), file, readMeta(new File(file.getPath() + META))[0], filter.toString());
+			
+			if (titles != null) {
+				titles.buildIndex(pool);
+				animeTitles.set(titles);
+				return SUCCESS;
+			} // end if
+			
+			// Read the titles out of the dump and snapshot them for the next start
+			in = new GZIPInputStream(new FileInputStream(file), BUFFER);
+			titles = loadTitles(in, gzipSize(file), filter);
+			writeSnapshot(file, filter, titles);
+			publish(titles);
 		} // end try
-		catch (ParserConfigurationException e) {
-			return PARSER_ERROR;
-		} // end ParserConfEx
+		catch (FactoryConfigurationError e) {
+			return loadFailed(PARSER_ERROR);
+		} // end FactoryConfigurationError
+		catch (XMLStreamException e) {
+			return loadFailed(BAD_XML);
+		} // end XMLStreamException
+		catch (NumberFormatException e) {
+			return loadFailed(BAD_XML);
+		} // end NumberFormatException
+		catch (ParseException e) {
+			System.err.println(e.getMessage());
+			return loadFailed(BAD_XML);
+		} // end ParseException
 		catch (IOException e) {
-			return UNREADABLE_FILE;
+			return loadFailed(UNREADABLE_FILE);
 		} // end IOException
-		catch (SAXException e) {
-			return BAD_XML;
-		} // end SAXException
+		catch (ChunkFailure e) {
+			return loadFailed(e.code);
+		} // end ChunkFailure
+		finally {
+			close(in);
+		} // end finally
 		
 		return SUCCESS;
 	} // end loadTitles
 	
+	// Parse the uncompressed dump, XML is split across the cores when there is more than one
+	private static AnimeTitles loadTitles(InputStream in, long size, TitleFilter filter) 
+			throws IOException, XMLStreamException, ParseException {
+		in = new BufferedInputStream(in, BUFFER);
+		
+		if (pool.getParallelism() < 2 || !isXml(in))
+			return parseDump(in, filter);
+		
+		byte[] data = readAll(in, size);
+		return parseTitles(data, pool.getParallelism() * CHUNKS_PER_THREAD, filter);
+	} // end loadTitles
+	
+	// Parse an uncompressed dump in either format as it is read
+	private static AnimeTitles parseDump(InputStream in, TitleFilter filter) 
+			throws IOException, XMLStreamException, ParseException {
+		if (isXml(in))
+			return parseTitles(in, filter);
+		
+		return TitleDatParser.parse(in, filter);
+	} // end parseDump
+	
+	/***
+	 * Check the format of the dump without using up any of the stream. The XML dump
+	 * starts with a tag, the .dat dump with a comment or an aid.
+	 * @param in - The uncompressed dump, must support mark
+	 * @return true for the XML dump
+	 */
+	private static boolean isXml(InputStream in) throws IOException {
+		int c;
+		
+		in.mark(BUFFER);
+		try {
+			// Skip a byte order mark and white space
+			do {
+				c = in.read();
+			} while (c == 0xEF || c == 0xBB || c == 0xBF || Character.isWhitespace(c));
+		}
+		finally {
+			in.reset();
+		}
+		
+		// Let the XML parser report an empty file
+		return c == '<' || c < 0;
+	} // end isXml
+	
+	/***
+	 * Parses the titles XML in parallel. The document is split into chunks on anime
+	 * element boundaries, each chunk is parsed as its own small document on the fork-join
+	 * pool and the results are merged back together in aid order.
+	 * @param data - The whole uncompressed animetitles XML
+	 * @param chunks - How many pieces to split the document into
+	 * @param filter - Which titles to keep
+	 * @return The titles read from the document
+	 * @throws XMLStreamException if the XML is malformed
+	 */
+	public static AnimeTitles parseTitles(byte[] data, int chunks, TitleFilter filter) throws XMLStreamException {
+		int[] bounds = splitChunks(data, chunks);
+		
+		// Nothing to split, let the parser report what is wrong with it
+		if (bounds == null)
+			return parseTitles(new ByteArrayInputStream(data), filter);
+		
+		ArrayList<AnimeTitle> list;
+		
+		try {
+			list = pool.invoke(new ChunkParser(data, bounds, 0, bounds.length - 1, filter));
+		}
+		catch (ChunkFailure e) {
+			if (e.getCause() instanceof XMLStreamException)
+				throw (XMLStreamException)e.getCause();
+			throw e;
+		}
+		
+		// Chunks come back in document order
+		return byAid(list);
+	} // end parseTitles
+	
+	// Put the entries in aid order. Searches return anime in list order, so every way of
+	// reading the dump has to give the same order.
+	private static AnimeTitles byAid(ArrayList<AnimeTitle> list) {
+		AnimeTitle[] sorted = list.toArray(new AnimeTitle[list.size()]);
+		Arrays.sort(sorted, AnimeTitle.BY_AID);
+		
+		AnimeTitles titles = new AnimeTitles(sorted.length);
+		for (int i = 0; i < sorted.length; i++)
+			titles.add(sorted[i]);
+		
+		return titles;
+	} // end byAid
+	
+	/***
+	 * Find where to split the document. Each chunk starts on an anime element and the
+	 * last one ends where the root element is closed.
+	 * @return Chunk boundaries, chunk i is [bounds[i], bounds[i+1]), or null if there are no anime elements
+	 */
+	private static int[] splitChunks(byte[] data, int chunks) {
+		int first = nextAnime(data, 0);
+		if (first < 0)
+			return null;
+		
+		int end = lastIndexOf(data, ROOT_END);
+		if (end < first)
+			end = data.length;
+		
+		int size = Math.max((end - first) / chunks, 1);
+		int[] bounds = new int[chunks + 1];
+		int count = 0;
+		
+		bounds[count++] = first;
+		while (count < chunks) {
+			int next = nextAnime(data, bounds[count - 1] + size);
+			if (next < 0 || next >= end)
+				break;
+			bounds[count++] = next;
+		} // end while
+		bounds[count++] = end;
+		
+		return Arrays.copyOf(bounds, count);
+	} // end splitChunks
+	
+	// Position of the next <anime element at or after from, -1 if there are none
+	private static int nextAnime(byte[] data, int from) {
+		for (int i = Math.max(from, 0); i <= data.length - ANIME_START.length - 1; i++) {
+			if (data[i] != '<')
+				continue;
+			
+			int n = 1;
+			while (n < ANIME_START.length && data[i + n] == ANIME_START[n])
+				n++;
+			
+			// Make sure it is not <animetitles
+			byte next = data[i + n];
+			if (n == ANIME_START.length && (next == ' ' || next == '>' || next == '\t' || next == '\n' || next == '\r'))
+				return i;
+		} // end for
+		
+		return -1;
+	} // end nextAnime
+	
+	private static int lastIndexOf(byte[] data, byte[] pattern) {
+		for (int i = data.length - pattern.length; i >= 0; i--) {
+			int n = 0;
+			while (n < pattern.length && data[i + n] == pattern[n])
+				n++;
+			if (n == pattern.length)
+				return i;
+		} // end for
+		
+		return -1;
+	} // end lastIndexOf
+	
+	// Read the whole stream, size is the expected length or -1 if unknown
+	private static byte[] readAll(InputStream in, long size) throws IOException {
+		byte[] data = new byte[(size > 0 && size < Integer.MAX_VALUE) ? (int)size : BUFFER];
+		int length = 0;
+		int bits;
+		
+		while (true) {
+			if (length == data.length) {
+				// Check for the end before growing a correctly sized buffer
+				int b = in.read();
+				if (b < 0)
+					break;
+				data = Arrays.copyOf(data, data.length * 2);
+				data[length++] = (byte)b;
+			} // end if
+			
+			bits = in.read(data, length, data.length - length);
+			if (bits < 0)
+				break;
+			length += bits;
+		} // end while
+		
+		return (length == data.length) ? data : Arrays.copyOf(data, length);
+	} // end readAll
+	
+	// Uncompressed size stored in the gzip trailer, -1 if it can not be read
+	private static long gzipSize(File file) {
+		RandomAccessFile raf = null;
+		
+		try {
+			raf = new RandomAccessFile(file, "r");
+			if (raf.length() < 4)
+				return -1;
+			
+			raf.seek(raf.length() - 4);
+			byte[] b = new byte[4];
+			raf.readFully(b);
+			
+			// Stored little endian, modulo 2^32
+			return (b[0] & 0xFFL) | ((b[1] & 0xFFL) << 8) | ((b[2] & 0xFFL) << 16) | ((b[3] & 0xFFL) << 24);
+		}
+		catch (IOException e) {
+			return -1;
+		}
+		finally {
+			try {
+				if (raf != null)
+					raf.close();
+			}
+			catch (IOException e) {
+				System.err.println(e.getMessage());
+			}
+		} // end finally
+	} // end gzipSize
+	
+	/***
+	 * Returns the fork-join pool shared by the title loading and searching code.
+	 * @return The pool, sized to the number of cores
+	 */
+	public static ForkJoinPool getPool() {
+		return pool;
+	} // end getPool
+	
+	/***
+	 * Reads the animetitles XML from the stream using a pull parser. Each AnimeTitle
+	 * is built up while its anime element is open and added to the list as soon as
+	 * the element closes, so only the finished titles are ever held in memory.
+	 * @param in - Stream containing the uncompressed animetitles XML
+	 * @param filter - Which titles to keep
+	 * @return The titles read from the stream
+	 * @throws XMLStreamException if the XML is malformed
+	 */
+	private static AnimeTitles parseTitles(InputStream in, TitleFilter filter) throws XMLStreamException {
+		ArrayList<AnimeTitle> titles = new ArrayList<AnimeTitle>();	// Titles read so far, in document order
+		AnimeTitle anime = null;					// The anime element currently open
+		TitleStore store = new TitleStore();		// Title strings of this document
+		
+		XMLInputFactory xif = XMLInputFactory.newInstance();
+		xif.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		// The parser closes its input at the end of the document, leave that to the caller
+		XMLStreamReader xml = xif.createXMLStreamReader(new FilterInputStream(in) {
+			@Override
+			public void close() {
+				// the caller closes the stream
+			}
+		});
+		
+		try {
+			while (xml.hasNext()) {
+				int event = xml.next();
+				
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = xml.getLocalName();
+					
+					// Start a new AnimeTitle from the aID
+					if (name.equals("anime")) {
+						anime = new AnimeTitle(Integer.parseInt(xml.getAttributeValue(null, "aid")), store);
+					} // end if anime
+					else if (name.equals("title") && anime != null) {
+						String type = xml.getAttributeValue(null, "type");
+						String lang = xml.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+						String title = xml.getElementText();
+						
+						// Only keep the wanted titles
+						if (type != null && filter.accepts(type, lang))
+							addTitle(anime, type, title);
+					} // end if title
+				} // end START_ELEMENT
+				else if (event == XMLStreamConstants.END_ELEMENT) {
+					// The anime is complete, add the title object to the list
+					if (anime != null && xml.getLocalName().equals("anime")) {
+						titles.add(anime);
+						anime = null;
+					} // end if anime
+				} // end END_ELEMENT
+			} // end while
+		} // end try
+		finally {
+			xml.close();
+		} // end finally
+		
+		return byAid(titles);
+	} // end parseTitles
+	
+	/***
+	 * Parses a range of chunks, splitting the range in half until there is one chunk left.
+	 */
+	private static class ChunkParser extends RecursiveTask<ArrayList<AnimeTitle>> {
+		private static final long serialVersionUID = 1L;
+		
+		private byte[]	data;		// The whole document
+		private int[]	bounds;		// Chunk boundaries
+		private int		first;		// First chunk to parse
+		private int		last;		// One past the last chunk to parse
+		private TitleFilter	filter;	// Which titles to keep
+		
+		public ChunkParser(byte[] data, int[] bounds, int first, int last, TitleFilter filter) {
+			this.data = data;
+			this.bounds = bounds;
+			this.first = first;
+			this.last = last;
+			this.filter = filter;
+		}
+		
+		@Override
+		protected ArrayList<AnimeTitle> compute() {
+			if (last - first > 1) {
+				int mid = (first + last) >>> 1;
+				ChunkParser left = new ChunkParser(data, bounds, first, mid, filter);
+				ChunkParser right = new ChunkParser(data, bounds, mid, last, filter);
+				
+				left.fork();
+				ArrayList<AnimeTitle> result = right.compute();
+				ArrayList<AnimeTitle> head = left.join();
+				head.addAll(result);
+				
+				return head;
+			} // end if
+			
+			// Wrap the chunk in a root element so it is a document of its own
+			InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+					new ByteArrayInputStream(ROOT_START),
+					new ByteArrayInputStream(data, bounds[first], bounds[first + 1] - bounds[first]),
+					new ByteArrayInputStream(ROOT_END))));
+			
+			try {
+				return new ArrayList<AnimeTitle>(Arrays.asList(parseTitles(in, filter).toArray()));
+			}
+			catch (XMLStreamException e) {
+				throw new ChunkFailure(e, BAD_XML);
+			}
+			catch (FactoryConfigurationError e) {
+				throw new ChunkFailure(e, PARSER_ERROR);
+			}
+			catch (NumberFormatException e) {
+				throw new ChunkFailure(e, BAD_XML);
+			}
+		} // end compute
+	} // end class ChunkParser
+	
+	/***
+	 * Carries a parse error out of a ChunkParser along with the return code for it.
+	 */
+	private static class ChunkFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		private int		code;		// Return code for the error
+		
+		public ChunkFailure(Throwable cause, int code) {
+			super(cause);
+			this.code = code;
+		}
+	} // end class ChunkFailure
+	
+	private static void addTitle(AnimeTitle anime, String type, String title) {
+		if (type.compareToIgnoreCase("main") == 0)
+			anime.setMainTitle(title);
+		else if (type.compareToIgnoreCase("official") == 0)
+			anime.addOfficialTitle(title);
+		else if (type.compareToIgnoreCase("short") == 0)
+			anime.addShortTitle(title);
+	} // end addTitle
+	
+	// Keep whatever titles were loaded before, but never leave the list null
+	private static int loadFailed(int code) {
+		animeTitles.compareAndSet(null, new AnimeTitles());
+		
+		return code;
+	} // end loadFailed
+	
+	private static void close(InputStream in) {
+		try {
+			if (in != null)
+				in.close();
+		}
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+		}
+	} // end close
+	
 	public static AnimeTitles getTitles() {
-		return animeTitles;
+		return animeTitles.get();
 	} // end getTitles
+	
+	/***
+	 * The changes applied to the loaded titles by the last update
+	 * @return The delta, or null if the titles were loaded in full
+	 */
+	public static TitleDelta getLastDelta() {
+		return lastDelta;
+	} // end getLastDelta
+	
+	/***
+	 * Input stream that writes a copy of every byte read to an output stream.
+	 */
+	private static class TeeInputStream extends FilterInputStream {
+		private OutputStream	copy;		// Stream receiving the bytes read
+		private boolean			finished;	// The source reached its end or failed
+		
+		public TeeInputStream(InputStream in, OutputStream out) {
+			super(in);
+			copy = out;
+			finished = false;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int bits;
+			
+			try {
+				bits = super.read(b, off, len);
+			}
+			catch (IOException e) {
+				finished = true;
+				throw e;
+			}
+			
+			if (bits > 0)
+				copy.write(b, off, bits);
+			else if (bits < 0)
+				finished = true;
+			
+			return bits;
+		}
+		
+		public boolean isFinished() {
+			return finished;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			// Read the skipped bytes so they are still copied
+			byte[] data = new byte[(int)Math.min(n, BUFFER)];
+			int bits = read(data, 0, data.length);
+			
+			return Math.max(bits, 0);
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	} // end class TeeInputStream
+	
+	/***
+	 * Input stream that ends after a set number of bytes.
+	 */
+	private static class LimitedInputStream extends FilterInputStream {
+		private long	remaining;		// Bytes left before the end of the stream
+		
+		public LimitedInputStream(InputStream in, long limit) {
+			super(in);
+			remaining = limit;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0)
+				return -1;
+			
+			int b = super.read();
+			if (b >= 0)
+				remaining--;
+			
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0)
+				return -1;
+			
+			int bits = super.read(b, off, (int)Math.min(len, remaining));
+			if (bits > 0)
+				remaining -= bits;
+			
+			return bits;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			
+			return skipped;
+		}
+		
+		@Override
+		public int available() throws IOException {
+			return (int)Math.min(super.available(), remaining);
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	} // end class LimitedInputStream
 } // end class DatabaseMgr
@@ -1,3 +1,5 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /***
@@ -23,6 +25,14 @@ public class EpisodeEntry implements Serializable {
 	/*** CONSTANTS ***/
 	private static final long serialVersionUID = -7480223043249434470L;
 	
+	// Episode types, the letter AniDB puts in front of the episode number
+	public static final char REGULAR = '\0';		// Regular episode, no letter
+	public static final char SPECIAL = 'S';		// Special
+	public static final char CREDITS = 'C';		// Opening or ending
+	public static final char TRAILER = 'T';		// Trailer
+	public static final char PARODY = 'P';		// Parody
+	public static final char OTHER = 'O';		// Other
+	
 	/*** DATA MEMBERS ***/
 	private int eid = -1;			// Episode ID
 	private int epno;				// Episode Number (can include characters S, C, T, O to define type)
@@ -30,6 +40,7 @@ public class EpisodeEntry implements Serializable {
 	private int length;				// Length of the episode
 	private String title;			// Episode title
 	private long aired;				// Date the episode aired
+	private char type;				// Episode type, REGULAR or the letter of a special type
 	
 	// Constructor
 	public EpisodeEntry(int new_eid) {
@@ -39,6 +50,7 @@ public class EpisodeEntry implements Serializable {
 		length = 24;
 		title = null;
 		aired = 0;
+		type = REGULAR;
 	} // end constructor
 	
 	// Accessor/Mutator methods
@@ -54,10 +66,12 @@ public class EpisodeEntry implements Serializable {
 		case 'P':
 		case 'O':
 			season = 0;
+			this.type = type;
 			epno = Integer.parseInt(new_epno.substring(1));
 			break;
 		default:
 			season = 1;
+			this.type = REGULAR;
 			epno = Integer.parseInt(new_epno.trim());
 			break;
 		} // end switch
@@ -94,6 +108,33 @@ public class EpisodeEntry implements Serializable {
 		return season;
 	}
 	
+	public char getType() {
+		return type;
+	}
+	
+	/***
+	 * The season an episode of the given type is put in, 0 for specials
+	 * and 1 for regular episodes.
+	 * @param type - Episode type
+	 * @return The season
+	 */
+	public static int seasonOf(char type) {
+		return (type == REGULAR) ? 1 : 0;
+	} // end seasonOf
+	
+	/***
+	 * The episode number the way AniDB writes it, such as "12" or "S2".
+	 * @param type - Episode type
+	 * @param epno - Episode number
+	 * @return The episode number with the type letter in front
+	 */
+	public static String formatEpno(char type, int epno) {
+		if (type == REGULAR)
+			return String.valueOf(epno);
+		
+		return type + String.valueOf(epno);
+	} // end formatEpno
+	
 	public String getTitle() {
 		return title;
 	}
@@ -106,4 +147,12 @@ public class EpisodeEntry implements Serializable {
 		return aired;
 	}
 	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		// Caches from before the type was kept only have season 0 to mark the specials
+		if (type == REGULAR && season == 0)
+			type = SPECIAL;
+	} // end readObject
+	
 } // end class EpisodeEntry 
@@ -1,4 +1,9 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 /***
@@ -26,42 +31,201 @@ public class EpisodeList implements Serializable {
 	private static final long serialVersionUID = 4821124393941487674L;			// Serial ID
 	public static final int			SUCCESS = 0;								// Successful return code	
 	public static final int			NO_EID = -1;								// Attempted to add series with -1 AID
+	public static final int			DUPLICATE = 1;								// The episode was already in the list
+	
+	// Written as the LinkedList the episodes used to be kept in, see SeriesList
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("episodeCount", int.class),
+		new ObjectStreamField("episode", LinkedList.class)
+	};
 
 	/*** CLASS DATA MEMBERS ***/
+	// Lookups take no lock. Adding an episode locks this list, so each series is filled
+	// in under its own lock, and puts it in the indexes in place, by eid first, so a
+	// reader that finds an episode by number also finds it by eid. Only replacing an
+	// episode builds new indexes, which are published together.
 	private int								episodeCount;	// Count of series entries
-	private LinkedList<EpisodeEntry>		episode;			// List of series
+	private EpisodeEntry[]					episode;			// List of series, the first episodeCount are used
+	private volatile Indexes				indexes;		// Episodes by eid and by number, not written to the cache
 	
 	public EpisodeList() {
-		episode = new LinkedList<EpisodeEntry>();
+		episode = new EpisodeEntry[4];
 		episodeCount = 0;
+		indexes = new Indexes(4);
 	}
 	
+	/***
+	 * Find a regular episode by its number.
+	 * @param sEpno - Episode number
+	 * @return The episode, null if it is not in the list
+	 */
 	public EpisodeEntry getEpisode(int sEpno) {
-		// Check each episode for eid
-		for (int i = 0; i < episodeCount; i++) {
-			EpisodeEntry temp = episode.get(i);
-			if (temp.getEpno() == sEpno)
-				return temp;
-		} // end for
-		
-		return null;
+		return getEpisode(EpisodeEntry.REGULAR, sEpno);
 	}
 	
-	public int addEpisode(EpisodeEntry nEpisode) {
-		int eid = nEpisode.getEID();
-
+	/***
+	 * Find an episode by its type and number, in the season episodes of that type are put in.
+	 * @param type - Episode type, EpisodeEntry.REGULAR or one of the special types
+	 * @param sEpno - Episode number
+	 * @return The episode, null if it is not in the list
+	 */
+	public EpisodeEntry getEpisode(char type, int sEpno) {
+		return getEpisode(EpisodeEntry.seasonOf(type), type, sEpno);
+	}
+	
+	/***
+	 * Find an episode by season, type and number.
+	 * @param season - Season of the episode
+	 * @param type - Episode type, EpisodeEntry.REGULAR or one of the special types
+	 * @param sEpno - Episode number
+	 * @return The episode, null if it is not in the list
+	 */
+	public EpisodeEntry getEpisode(int season, char type, int sEpno) {
+		return indexes.epnos.get(key(season, type, sEpno));
+	}
+	
+	/***
+	 * Find an episode by its AniDB episode ID.
+	 * @param sEid - Episode ID
+	 * @return The episode, null if it is not in the list
+	 */
+	public EpisodeEntry getEpisodeByEID(int sEid) {
+		return indexes.eids.get(sEid);
+	}
+	
+	/***
+	 * Add an episode to the list, it should be filled in before it is added.
+	 * @param nEpisode - The episode to add
+	 * @return SUCCESS, DUPLICATE if it was already in the list, or NO_EID if the episode has no eid
+	 */
+	public synchronized int addEpisode(EpisodeEntry nEpisode) {
 		// Make sure series has a valid aid
-		if (eid == -1) {
+		if (nEpisode.getEID() == -1) {
 			return NO_EID;
 		}
 		
-		// Only add if the series hasn't already been added
-		if (getEpisode(eid) == null) {
-			episode.add(nEpisode);
-			episodeCount++;
+		return add(nEpisode);
+	}
+	
+	/***
+	 * Add several episodes at once, under one lock.
+	 * @param nEpisodes - The episodes to add, filled in before they are added
+	 * @return SUCCESS, or NO_EID if an episode had no eid and was left out
+	 */
+	public synchronized int addEpisodes(EpisodeEntry[] nEpisodes) {
+		int result = SUCCESS;
+		
+		for (EpisodeEntry nEpisode : nEpisodes) {
+			if (nEpisode.getEID() == -1)
+				result = NO_EID;
+			else
+				add(nEpisode);
+		} // end for
+		
+		return result;
+	}
+	
+	public int size() {
+		return indexes.eids.size();
+	}
+	
+	/***
+	 * The episodes in the order they were added.
+	 * @return A copy of the list
+	 */
+	public synchronized EpisodeEntry[] toArray() {
+		return Arrays.copyOf(episode, episodeCount);
+	}
+	
+	// Add an episode to the list and the indexes, SUCCESS or DUPLICATE
+	private int add(EpisodeEntry nEpisode) {
+		EpisodeEntry old = indexes.eids.get(nEpisode.getEID());
+		
+		if (old == null) {
+			if (episodeCount == episode.length)
+				episode = Arrays.copyOf(episode, episodeCount * 2);
+			episode[episodeCount++] = nEpisode;
+			
+			index(nEpisode, indexes);
+			return SUCCESS;
 		} // end if
 		
+		// Only add if the episode hasn't already been added
+		if (key(old) == key(nEpisode))
+			return DUPLICATE;
+		
+		// Specials cached before the type was kept can be under the wrong type, use the new
+		// entry. Its old number is dropped from the index, so the indexes are built again.
+		Indexes rebuilt = new Indexes(episodeCount);
+		for (int i = 0; i < episodeCount; i++) {
+			if (episode[i] == old)
+				episode[i] = nEpisode;
+			index(episode[i], rebuilt);
+		} // end for
+		indexes = rebuilt;
+		
 		return SUCCESS;
-	}
+	} // end add
+	
+	// Add an episode to the indexes, by eid first. The first episode with a number keeps it.
+	private static void index(EpisodeEntry nEpisode, Indexes to) {
+		long key = key(nEpisode);
+		
+		to.eids.put(nEpisode.getEID(), nEpisode);
+		if (!to.epnos.containsKey(key))
+			to.epnos.put(key, nEpisode);
+	} // end index
+	
+	private static long key(EpisodeEntry nEpisode) {
+		return key(nEpisode.getSeason(), nEpisode.getType(), nEpisode.getEpno());
+	} // end key
+	
+	// Combine the season, type and number into one key
+	private static long key(int season, char type, int epno) {
+		return ((long)season << 48) | ((long)type << 32) | (epno & 0xFFFFFFFFL);
+	} // end key
+	
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		
+		fields.put("episodeCount", episodeCount);
+		fields.put("episode", new LinkedList<EpisodeEntry>(Arrays.asList(episode).subList(0, episodeCount)));
+		out.writeFields();
+	} // end writeObject
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		LinkedList<EpisodeEntry> list = (LinkedList<EpisodeEntry>)fields.get("episode", null);
+		
+		if (list == null)
+			list = new LinkedList<EpisodeEntry>();
+		
+		Indexes read = new Indexes(list.size());
+		
+		episode = new EpisodeEntry[Math.max(list.size(), 4)];
+		episodeCount = 0;
+		
+		// Older versions let the same episode be added more than once, keep the first
+		for (EpisodeEntry temp : list) {
+			if (temp != null && !read.eids.containsKey(temp.getEID())) {
+				episode[episodeCount++] = temp;
+				index(temp, read);
+			}
+		} // end for
+		
+		indexes = read;
+	} // end readObject
+	
+	// The two indexes of the list, replaced together
+	private static final class Indexes {
+		final LongHashMap<EpisodeEntry>		eids;	// Episodes by eid
+		final LongHashMap<EpisodeEntry>		epnos;	// Episodes by season, type and number
+		
+		Indexes(int expected) {
+			eids = new LongHashMap<EpisodeEntry>(expected);
+			epnos = new LongHashMap<EpisodeEntry>(expected);
+		}
+	} // end class Indexes
 
-} // end class SeriesList
\ No newline at end of file
+} // end class EpisodeList
\ No newline at end of file
@@ -22,19 +22,23 @@ public class FileDetails {
 	private String 		filepath;				// Path the file is stored in
 	private int			aID;					// The anime series ID from AniDB linked to this file
 	private String		series;					// Anime series name linked to this file
+	private String		parsedSeries;			// Series name as parsed from the filename
 	private int			epno;					// The episode number linked to this file
 	private int			season		= 1;		// The season number, defaults to 1
+	private char		type		= EpisodeEntry.REGULAR;	// Episode type letter parsed from the filename
 	private boolean		movie		= false;	// Is this a movie? Defaults to no
 
 	public FileDetails(String name, String title, int num) {
 		filename = name;
 		series = title;
+		parsedSeries = title;
 		epno = num;
 	} // end FileDetails
 	
 	public FileDetails(String name, String title) {
 		filename = name;
 		series = title;
+		parsedSeries = title;
 		movie = true;
 	}
 	
@@ -62,6 +66,11 @@ public class FileDetails {
 		return series;
 	} // end getSeries
 	
+	// The name the series was looked up by, it stays the same once the file is linked
+	public String getParsedSeries() {
+		return parsedSeries;
+	} // end getParsedSeries
+	
 	public void setEpno(int num) {
 		epno = num;
 	} // end setEpno
@@ -78,6 +87,22 @@ public class FileDetails {
 		return season;
 	} // end getSeason
 	
+	public void setEpisodeType(char letter) {
+		type = letter;
+	} // end setEpisodeType
+	
+	/***
+	 * The type of episode this file is, as parsed from the filename. Boxee puts
+	 * specials in season 0, those files have no letter.
+	 * @return The type letter, EpisodeEntry.SPECIAL for season 0, otherwise EpisodeEntry.REGULAR
+	 */
+	public char getEpisodeType() {
+		if (type == EpisodeEntry.REGULAR && season == 0)
+			return EpisodeEntry.SPECIAL;
+		
+		return type;
+	} // end getEpisodeType
+	
 	public void setMovie(boolean on) {
 		movie = on;
 	}
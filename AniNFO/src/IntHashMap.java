@@ -0,0 +1,200 @@
+import java.util.Arrays;
+
+/***
+ * IntHashMap - Hash table keyed by primitive ints so lookups by AniDB ID do not
+ * box the key. Open addressing with linear probing, a null value marks an empty
+ * slot so null values can not be stored.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class IntHashMap<V> {
+	/*** CONSTANTS ***/
+	private static final int		MIN_CAPACITY	=	16;			// Smallest table, always a power of 2
+	
+	/*** CLASS DATA MEMBERS ***/
+	private int[]					keys;			// Key of each slot
+	private Object[]				values;			// Value of each slot, null if empty
+	private int						count;			// Number of entries
+	private int						mask;			// Table length - 1
+	
+	public IntHashMap() {
+		this(MIN_CAPACITY);
+	} // end IntHashMap
+	
+	/***
+	 * Create a map with room for the given number of entries before it grows.
+	 * @param expected - Number of entries expected
+	 */
+	public IntHashMap(int expected) {
+		int capacity = MIN_CAPACITY;
+		
+		// Keep the table at most half full
+		while (capacity < expected * 2)
+			capacity <<= 1;
+		
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		count = 0;
+	} // end IntHashMap
+	
+	/***
+	 * Create a copy of another map, the values are shared.
+	 * @param other - Map to copy
+	 */
+	public IntHashMap(IntHashMap<V> other) {
+		keys = Arrays.copyOf(other.keys, other.keys.length);
+		values = Arrays.copyOf(other.values, other.values.length);
+		mask = other.mask;
+		count = other.count;
+	} // end IntHashMap
+	
+	/***
+	 * Get the value stored for a key.
+	 * @param key - The key to look up
+	 * @return The value, null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = hash(key) & mask;
+		
+		while (values[slot] != null) {
+			if (keys[slot] == key)
+				return (V)values[slot];
+			slot = (slot + 1) & mask;
+		} // end while
+		
+		return null;
+	} // end get
+	
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	} // end containsKey
+	
+	/***
+	 * Store a value for a key, replacing any value already there.
+	 * @param key - The key
+	 * @param value - The value, can not be null
+	 * @return The value that was replaced, null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null)
+			throw new NullPointerException("IntHashMap can not store null values");
+		
+		int slot = hash(key) & mask;
+		
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				V old = (V)values[slot];
+				values[slot] = value;
+				return old;
+			} // end if
+			slot = (slot + 1) & mask;
+		} // end while
+		
+		keys[slot] = key;
+		values[slot] = value;
+		count++;
+		
+		if (count * 2 > keys.length)
+			resize(keys.length * 2);
+		
+		return null;
+	} // end put
+	
+	/***
+	 * Remove the value stored for a key.
+	 * @param key - The key to remove
+	 * @return The value that was removed, null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int slot = hash(key) & mask;
+		
+		while (values[slot] != null) {
+			if (keys[slot] == key) {
+				V old = (V)values[slot];
+				values[slot] = null;
+				count--;
+				closeGap(slot);
+				return old;
+			} // end if
+			slot = (slot + 1) & mask;
+		} // end while
+		
+		return null;
+	} // end remove
+	
+	public int size() {
+		return count;
+	} // end size
+	
+	public boolean isEmpty() {
+		return count == 0;
+	} // end isEmpty
+	
+	public void clear() {
+		Arrays.fill(values, null);
+		count = 0;
+	} // end clear
+	
+	// Move later entries of the probe run back into a freed slot so lookups
+	// do not stop early at the gap
+	private void closeGap(int gap) {
+		int slot = (gap + 1) & mask;
+		
+		while (values[slot] != null) {
+			int home = hash(keys[slot]) & mask;
+			
+			// The entry can move if its home slot is not between the gap and where it is now
+			if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+				keys[gap] = keys[slot];
+				values[gap] = values[slot];
+				values[slot] = null;
+				gap = slot;
+			} // end if
+			slot = (slot + 1) & mask;
+		} // end while
+	} // end closeGap
+	
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] == null)
+				continue;
+			
+			int slot = hash(oldKeys[i]) & mask;
+			while (values[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+		} // end for
+	} // end resize
+	
+	// Spread sequential IDs across the table
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	} // end hash
+	
+} // end class IntHashMap
@@ -0,0 +1,164 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/***
+ * LongHashMap - Hash table keyed by primitive longs, laid out like IntHashMap, that
+ * can be read while it is added to. Lookups take no lock. Adds are made one at a
+ * time by the owner, under its own lock, and grow the table in place: each value is
+ * published with a volatile write after its key, and a resize fills the new table
+ * before it takes the place of the old one. Entries can not be removed, an owner
+ * that has to drop one builds a new map.
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class LongHashMap<V> {
+	/*** CONSTANTS ***/
+	private static final int		MIN_CAPACITY	=	16;			// Smallest table, always a power of 2
+	
+	/*** CLASS DATA MEMBERS ***/
+	private volatile Table			table;			// Current table, replaced when it grows
+	private volatile int			count;			// Number of entries
+	
+	public LongHashMap() {
+		this(MIN_CAPACITY);
+	} // end LongHashMap
+	
+	/***
+	 * Create a map with room for the given number of entries before it grows.
+	 * @param expected - Number of entries expected
+	 */
+	public LongHashMap(int expected) {
+		int capacity = MIN_CAPACITY;
+		
+		// Keep the table at most half full
+		while (capacity < expected * 2)
+			capacity <<= 1;
+		
+		table = new Table(capacity);
+		count = 0;
+	} // end LongHashMap
+	
+	/***
+	 * Get the value stored for a key, safe to call while another thread adds.
+	 * @param key - The key to look up
+	 * @return The value, null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		Table current = table;
+		int slot = hash(key) & current.mask;
+		Object value;
+		
+		// A value is only seen once its key has been written
+		while ((value = current.values.get(slot)) != null) {
+			if (current.keys[slot] == key)
+				return (V)value;
+			slot = (slot + 1) & current.mask;
+		} // end while
+		
+		return null;
+	} // end get
+	
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	} // end containsKey
+	
+	/***
+	 * Store a value for a key, replacing any value already there. Only one thread
+	 * may add at a time.
+	 * @param key - The key
+	 * @param value - The value, can not be null
+	 * @return The value that was replaced, null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new NullPointerException("LongHashMap can not store null values");
+		
+		Table current = table;
+		int slot = hash(key) & current.mask;
+		Object old;
+		
+		while ((old = current.values.get(slot)) != null) {
+			if (current.keys[slot] == key) {
+				current.values.set(slot, value);
+				return (V)old;
+			} // end if
+			slot = (slot + 1) & current.mask;
+		} // end while
+		
+		// Grow before the entry goes in, so it is never left out of the table readers see
+		if ((count + 1) * 2 > current.keys.length) {
+			current = resize(current, current.keys.length * 2);
+			slot = hash(key) & current.mask;
+			while (current.values.get(slot) != null)
+				slot = (slot + 1) & current.mask;
+		} // end if
+		
+		current.keys[slot] = key;
+		current.values.set(slot, value);
+		count++;
+		
+		return null;
+	} // end put
+	
+	public int size() {
+		return count;
+	} // end size
+	
+	public boolean isEmpty() {
+		return count == 0;
+	} // end isEmpty
+	
+	// Copy the entries into a larger table and make it the one readers use
+	private Table resize(Table old, int capacity) {
+		Table bigger = new Table(capacity);
+		
+		for (int i = 0; i < old.keys.length; i++) {
+			Object value = old.values.get(i);
+			if (value == null)
+				continue;
+			
+			int slot = hash(old.keys[i]) & bigger.mask;
+			while (bigger.values.get(slot) != null)
+				slot = (slot + 1) & bigger.mask;
+			bigger.keys[slot] = old.keys[i];
+			bigger.values.set(slot, value);
+		} // end for
+		
+		table = bigger;
+		return bigger;
+	} // end resize
+	
+	// Spread keys that differ only in a few bits across the table
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	} // end hash
+	
+	// Keys and values of one table size, a key is written before its value
+	private static final class Table {
+		final long[]						keys;		// Key of each slot
+		final AtomicReferenceArray<Object>	values;		// Value of each slot, null if empty
+		final int							mask;		// Table length - 1
+		
+		Table(int capacity) {
+			keys = new long[capacity];
+			values = new AtomicReferenceArray<Object>(capacity);
+			mask = capacity - 1;
+		}
+	} // end class Table
+	
+} // end class LongHashMap
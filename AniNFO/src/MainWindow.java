@@ -24,15 +24,15 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,6 +56,11 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
@@ -63,14 +68,20 @@ import javax.swing.event.ListSelectionListener;
 public class MainWindow extends JFrame implements ActionListener {
 	/*** CONSTANT ***/
 	private static final long 		serialVersionUID = 1L;
+	private static final String		WINDOW_TITLE = "AniNFO - Anime NFO Creator";
 	private static final String		CACHE_FILE = "cache.dat";
+	private static final String		LOG_FILE = "cache.log";			// Details fetched since the cache file was written
+	private static final String		NAMES_FILE = "names.dat";		// Series names matched to anime
+	private static final int		TITLE_CHOICES = 10;		// Most titles offered when a match is not certain
 
 	/*** CLASS DATA MEMBERS ***/
 	private LinkedList<File>		files;						// List of selected files
 	private LinkedList<String>		fileTitles;					// Titles of selected files
 	private LinkedList<FileDetails>	fileDetails;				// Details about selected files
-	private AnimeTitles				animeTitles;				// Anime title cache from AniDB download
+	private boolean					updating;					// A title update is running in the background
 	private SeriesList				seriesCache;				// Cache of details looked up from AniDB
+	private CacheLog				cacheLog;					// Saves details to disk as they are fetched
+	private ResolutionCache			resolutions;				// Anime each series name was matched to
 	private LinkedList<String>		seriesList;					// List of individual series to create NFO files for
 	
 	/*** WINDOW COMPONENTS ***/
@@ -84,6 +95,7 @@ public class MainWindow extends JFrame implements ActionListener {
 	JMenuItem helpUpdate;
 	JMenuItem helpAbout;
 	JMenuItem editPreferences;
+	JMenuItem editForget;
 	// Info Panel
 	InfoPanel infoPanel;
 	// Buttons
@@ -128,7 +140,7 @@ public class MainWindow extends JFrame implements ActionListener {
 		} // end error
 		
 		// Set values for this window
-		this.setTitle("AniNFO - Anime NFO Creator");
+		this.setTitle(WINDOW_TITLE);
 		this.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
 		/// Build the Window Components ///
@@ -182,7 +194,10 @@ public class MainWindow extends JFrame implements ActionListener {
 		editMenu.setMnemonic('E');
 		editPreferences = new JMenuItem("Preferences", 'P');
 		editPreferences.addActionListener(this);
+		editForget = new JMenuItem("Forget Title Match", 'M');
+		editForget.addActionListener(this);
 		editMenu.add(editPreferences);
+		editMenu.add(editForget);
 		
 		// Build help menu
 		helpMenu = new JMenu("Help");
@@ -211,59 +226,156 @@ public class MainWindow extends JFrame implements ActionListener {
 		
 		if (cacheFile.exists()) {
 			try {
-				FileInputStream fis = new FileInputStream(cacheFile);
-				ObjectInputStream in = new ObjectInputStream(fis);
-				
-				seriesCache = (SeriesList)in.readObject();
-				
-				in.close();
+				seriesCache = CacheFile.read(cacheFile);
 			}
 			catch (IOException e) {
 				JOptionPane.showMessageDialog(this, "Unable to read from the cached data file. The file may be corrupt.\n" +
-						"A new cache file will be created.", "Error - Unable to Read Cache", JOptionPane.ERROR_MESSAGE);
-				cacheFile.delete();
+						"It was kept as " + setAside(cacheFile) + " and a new cache file will be created.",
+						"Error - Unable to Read Cache", JOptionPane.ERROR_MESSAGE);
 				seriesCache = new SeriesList();
 			}
 			catch (ClassNotFoundException e) {
 				JOptionPane.showMessageDialog(this, "There was an error when reading from the cache data file. The file may be corrupt.\n" +
-						"A new cache file will be created.", "Error - Data Error in Cache File", JOptionPane.ERROR_MESSAGE);
-				cacheFile.delete();
+						"It was kept as " + setAside(cacheFile) + " and a new cache file will be created.",
+						"Error - Data Error in Cache File", JOptionPane.ERROR_MESSAGE);
 				seriesCache = new SeriesList();
 			}
 		}
 		else {
 			seriesCache = new SeriesList();
 		}
+		
+		// Add anything fetched after the cache file was last written
+		cacheLog = new CacheLog(new File(LOG_FILE), cacheFile, seriesCache);
+		
+		// Series names already matched to anime
+		resolutions = ResolutionCache.load(new File(NAMES_FILE));
 	} // end loadCache()
 	
+	/***
+	 * Move a cache file that could not be read out of the way, so it is not
+	 * written over and the details in it are not lost.
+	 * @param cacheFile - The cache file
+	 * @return The name the file was kept under
+	 */
+	private String setAside(File cacheFile) {
+		File kept = new File(cacheFile.getPath() + ".bad");
+		
+		try {
+			Files.move(cacheFile.toPath(), kept.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			System.err.println("Unable to move the cache file aside: " + e.getMessage());
+			return cacheFile.getPath();
+		}
+		
+		return kept.getPath();
+	} // end setAside
+	
 	private void updateDatabase() {
-		// Check that we have an upto date database file
-		if (!DatabaseMgr.isCurrent()) {
-			if (ConfigMgr.isAutoUpdate()) {
-				// Get the updated file
-				int result = DatabaseMgr.getUpdatedDatabase();
+		// Read the stored titles first so there is something to search while updating,
+		// both are done in the background so the window shows at once
+		final boolean load = (DatabaseMgr.getTitles() == null);
+		final boolean update = !DatabaseMgr.isCurrent() && ConfigMgr.isAutoUpdate();
+		
+		if (updating || (!load && !update))
+			return;
+		
+		// Searches keep using the loaded titles until the updated ones are swapped in
+		updating = true;
+		if (load)
+			setLoading(true);
+		SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
+			@Override
+			protected Integer doInBackground() {
+				if (load) {
+					DatabaseMgr.loadTitles();
 					
-				// Check for errors
-				if (result == DatabaseMgr.FILE_NOT_FOUND) {
-					JOptionPane.showMessageDialog(this, "Unable to find necessary file. This usually occurs if the animetitles.xml.gz did not" +
-							" download properly.", "File Not Found", JOptionPane.WARNING_MESSAGE);
-				} // end FILE_NOT_FOUND
-				else if (result == DatabaseMgr.INVALID_URL) {
-					JOptionPane.showMessageDialog(this, "Unable to access AniDB Databse Dump URL.", "Invalid URL", 
-							JOptionPane.WARNING_MESSAGE);
-				} // end INVALID_URL
-				else if (result == DatabaseMgr.UNREADABLE_FILE) {
-					JOptionPane.showMessageDialog(this, "Unable to access one of the necessary files due. The file may be in use or you " +
-							"may not have permission to access the file.", "I/O Exception", JOptionPane.WARNING_MESSAGE);
-				} // end UNREADABLE_FILE
-			} // end if autoupdate
-		} // end isCurrent
-		
-		// Read the database XML file into the AnimeTitles structure
-		DatabaseMgr.loadTitles();
-		animeTitles = DatabaseMgr.getTitles();
+					// Files can be matched as soon as the stored titles are in
+					if (DatabaseMgr.getTitles() != null) {
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								setLoading(false);
+							}
+						});
+					} // end if
+				} // end if
+				
+				return update ? DatabaseMgr.getUpdatedDatabase() : null;
+			}
+			
+			@Override
+			protected void done() {
+				updating = false;
+				setLoading(false);
+				
+				try {
+					Integer result = get();
+					if (result == null)
+						return;
+					
+					// Forget the names matched to anime that are gone from AniDB
+					TitleDelta delta = DatabaseMgr.getLastDelta();
+					if (result == DatabaseMgr.SUCCESS && delta != null)
+						resolutions.removeAll(delta.getRemoved());
+					
+					showUpdateResult(result);
+				}
+				catch (InterruptedException e) {
+					System.err.println(e.getMessage());
+				}
+				catch (ExecutionException e) {
+					System.err.println(e.getMessage());
+				}
+			}
+		};
+		worker.execute();
 	} // end updateDatabase
 	
+	/***
+	 * Show that the stored titles are still being read. Files can not be
+	 * matched to anime until they are, so opening them waits.
+	 * @param loading - True while the titles are read
+	 */
+	private void setLoading(boolean loading) {
+		fileOpen.setEnabled(!loading);
+		editForget.setEnabled(!loading);
+		helpUpdate.setEnabled(!loading);
+		this.setTitle(loading ? WINDOW_TITLE + " - Loading titles..." : WINDOW_TITLE);
+	} // end setLoading
+	
+	private void reloadTitles() {
+		// Load in the background, searches keep using the loaded titles until then
+		SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
+			@Override
+			protected Integer doInBackground() {
+				return DatabaseMgr.loadTitles();
+			}
+		};
+		worker.execute();
+	} // end reloadTitles
+	
+	private void showUpdateResult(int result) {
+		// Check for errors
+		if (result == DatabaseMgr.FILE_NOT_FOUND) {
+			JOptionPane.showMessageDialog(this, "Unable to find necessary file. This usually occurs if the AniDB titles dump did not" +
+					" download properly.", "File Not Found", JOptionPane.WARNING_MESSAGE);
+		} // end FILE_NOT_FOUND
+		else if (result == DatabaseMgr.INVALID_URL) {
+			JOptionPane.showMessageDialog(this, "Unable to access AniDB Databse Dump URL.", "Invalid URL", 
+					JOptionPane.WARNING_MESSAGE);
+		} // end INVALID_URL
+		else if (result == DatabaseMgr.UNREADABLE_FILE) {
+			JOptionPane.showMessageDialog(this, "Unable to access one of the necessary files due. The file may be in use or you " +
+					"may not have permission to access the file.", "I/O Exception", JOptionPane.WARNING_MESSAGE);
+		} // end UNREADABLE_FILE
+		else if (result == DatabaseMgr.BAD_XML || result == DatabaseMgr.PARSER_ERROR) {
+			JOptionPane.showMessageDialog(this, "The downloaded anime titles could not be read. The previous titles file " +
+					"will be used instead.", "Invalid Titles File", JOptionPane.WARNING_MESSAGE);
+		} // end BAD_XML
+	} // end showUpdateResult
+	
 	private void connect() {
 		// Authenticate to AniDB server
 		AniPacket packet = CommMgr.sendAuth();
@@ -394,6 +506,7 @@ public class MainWindow extends JFrame implements ActionListener {
 		String 	series		= null;
 		int 	epno		= 0;
 		int 	season		= 1;
+		char	type		= EpisodeEntry.REGULAR;
 		String temp;
 		boolean isMovie		= false;
 		
@@ -407,7 +520,9 @@ public class MainWindow extends JFrame implements ActionListener {
 			// Try finding match for E##
 			String matchstr = filename.replace('.', ' ');
 			matchstr = matchstr.replace('_', ' ');
-			String regex = "\\s+E\\d{2,}\\s+"; 		// First boxee format requires E followed by two numbers for the episode number
+			// First boxee format requires E followed by two numbers for the episode number,
+			// AniDB's letter for a special, credits, trailer, parody or other episode can take the place of the E
+			String regex = "\\s+[ESCTPO]\\d{2,}\\s+";
 			Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
 			Matcher match = pattern.matcher(matchstr);
 			
@@ -415,6 +530,8 @@ public class MainWindow extends JFrame implements ActionListener {
 			if (match.find()) {
 				temp = match.group().trim();
 				series = matchstr.substring(0,match.start()).trim();
+				if (Character.toUpperCase(temp.charAt(0)) != 'E')
+					type = Character.toUpperCase(temp.charAt(0));
 				try {
 					epno = Integer.parseInt(temp.substring(1));
 				}
@@ -453,6 +570,7 @@ public class MainWindow extends JFrame implements ActionListener {
 
 			if (season != 1) 
 				fDetail.setSeason(season);
+			fDetail.setEpisodeType(type);
 			
 			// Store the path for the file
 			fDetail.setPath(file.getParent());
@@ -464,27 +582,65 @@ public class MainWindow extends JFrame implements ActionListener {
 	} // end parseTitles
 	
 	private void getTitles() {
+		// Use the same titles for the whole batch even if an update is swapped in
+		AnimeTitles animeTitles = DatabaseMgr.getTitles();
+		
+		// Use the anime the names were matched to before, as long as they still exist
+		LinkedList<String> unknown = new LinkedList<String>();
+		for (String series : fileTitles) {
+			AnimeTitle known = animeTitles.searchTitles(resolutions.get(series));
+			
+			if (known != null)
+				linkFileDetails(series, known);
+			else
+				unknown.add(series);
+		} // end for
+		
+		// Names that are exactly a title need one lookup, main titles are tried
+		// first, then official titles and then short titles
+		LinkedList<String> unmatched = new LinkedList<String>();
+		for (String series : unknown) {
+			AnimeTitles exact = animeTitles.exactTitles(series);
+			
+			if (exact == null)
+				unmatched.add(series);
+			else if (exact.size() == 1)
+				resolveTitle(series, exact.getFirst());
+			else
+				selectTitle(series, exact, animeTitles);
+		} // end for
+		
+		// Find the titles containing each remaining series name in one pass over the titles
+		Map<String, AnimeTitles> found = animeTitles.searchTitles(unmatched);
+		
 		// Iterate through the list of file series titles found
 		// and associate the correct AniDB entry with each file
-		for (int i = 0; i < fileTitles.size(); i ++) {
-			AnimeTitles titles = animeTitles.searchTitles(fileTitles.get(i));
-			
-			// If there is more than one title matched provide a list to select
-			// from.
-			if (titles.size() > 1) {
-				TitleSelectorDlg tsWnd = new TitleSelectorDlg(titles);
-				AnimeTitle title = tsWnd.showDialog();
-				
-				if (title != null)
-					linkFileDetails(fileTitles.get(i), title);
-				else
-					JOptionPane.showMessageDialog(this,	"No anime title was selected from the list.", 
-							"Error - No Selection Made", JOptionPane.ERROR_MESSAGE);
+		for (String series : unmatched) {
+			AnimeTitles candidates = found.get(series);
+			
+			// Only one title has the name, just use it
+			if (candidates.size() == 1) {
+				resolveTitle(series, candidates.getFirst());
+				continue;
 			} // end if
-			// Only 1 match was found, just use it.
-			else if (titles.size() != 0) {
-				linkFileDetails(fileTitles.get(i), titles.getFirst());
-			} // end else
+			
+			// Rank the anime with a title containing the name, all of them only when none has it
+			TitleMatch[] matches = (candidates.size() > 1) ? candidates.rankTitles(series, TITLE_CHOICES) : new TitleMatch[0];
+			if (matches.length == 0)
+				matches = animeTitles.rankTitles(series, TITLE_CHOICES);
+			
+			// Use the best match if it is close enough
+			if (matches.length > 0 && matches[0].isAccepted()) {
+				resolveTitle(series, matches[0].getAnime());
+			} // end if
+			// Otherwise provide the closest matches to select from
+			else if (matches.length > 0) {
+				AnimeTitles titles = new AnimeTitles(matches.length);
+				for (TitleMatch match : matches)
+					titles.add(match.getAnime());
+				
+				selectTitle(series, titles, animeTitles);
+			} // end else if
 			else {
 				JOptionPane.showMessageDialog(this, "There were no matching anime titles found in the database.", 
 						"Error - No Match Found", JOptionPane.ERROR_MESSAGE);
@@ -492,6 +648,64 @@ public class MainWindow extends JFrame implements ActionListener {
 		} // end for
 	} // end getTitles
 	
+	// Let the user pick the anime for a name from the given choices
+	private void selectTitle(String series, AnimeTitles choices, AnimeTitles animeTitles) {
+		TitleSelectorDlg tsWnd = new TitleSelectorDlg(choices, animeTitles);
+		AnimeTitle title = tsWnd.showDialog();
+		
+		if (title != null)
+			resolveTitle(series, title);
+		else
+			JOptionPane.showMessageDialog(this,	"No anime title was selected from the list.", 
+					"Error - No Selection Made", JOptionPane.ERROR_MESSAGE);
+	} // end selectTitle
+	
+	/***
+	 * Forget the anime the series of a file was matched to and let the user pick it again.
+	 * The files with the same series name are linked to the new pick, if the user cancels
+	 * they keep the old one for now and the name is asked about the next time it comes up.
+	 * @param file - A file linked to the wrong anime
+	 */
+	private void forgetMatch(FileDetails file) {
+		String series = file.getParsedSeries();
+		AnimeTitles animeTitles = DatabaseMgr.getTitles();
+		
+		resolutions.remove(series);
+		
+		// Offer the exact titles and then the closest ones, the dialog can search for others
+		AnimeTitles choices = new AnimeTitles(TITLE_CHOICES);
+		AnimeTitles exact = animeTitles.exactTitles(series);
+		if (exact != null) {
+			for (int i = 0; i < exact.size(); i++)
+				choices.add(exact.get(i));
+		} // end if
+		for (TitleMatch match : animeTitles.rankTitles(series, TITLE_CHOICES)) {
+			if (choices.searchTitles(match.getAnime().getID()) == null)
+				choices.add(match.getAnime());
+		} // end for
+		
+		TitleSelectorDlg tsWnd = new TitleSelectorDlg(choices, animeTitles);
+		AnimeTitle title = tsWnd.showDialog();
+		if (title == null)
+			return;
+		
+		// Put the files back to the parsed name so they are linked again
+		for (FileDetails temp : fileDetails) {
+			if (temp.getParsedSeries().equalsIgnoreCase(series))
+				temp.setSeries(series);
+		} // end for
+		
+		resolveTitle(series, title);
+		getDetails();
+		infoPanel.refreshFileList();
+	} // end forgetMatch
+	
+	// Link the files and remember the anime for the next time the name comes up
+	private void resolveTitle(String title, AnimeTitle anime) {
+		resolutions.put(title, anime.getID());
+		linkFileDetails(title, anime);
+	} // end resolveTitle
+	
 	private void linkFileDetails(String title, AnimeTitle anime) {
 		// Check each file for matching title, update details from the provided anime
 		for (int i = 0; i < fileDetails.size(); i++) {
@@ -537,7 +751,7 @@ public class MainWindow extends JFrame implements ActionListener {
 					String plot;
 					
 					if (title.equals("")) {
-						AnimeTitle anime = animeTitles.searchTitles(aid);
+						AnimeTitle anime = DatabaseMgr.getTitles().searchTitles(aid);
 						title = anime.getMainTitle();
 					}
 					
@@ -564,6 +778,7 @@ public class MainWindow extends JFrame implements ActionListener {
 								"Error - Unable to update cache", JOptionPane.ERROR_MESSAGE);
 						return;
 					}
+					cacheLog.addSeries(series);
 				}
 				else {
 					switch (code) {
@@ -640,7 +855,7 @@ public class MainWindow extends JFrame implements ActionListener {
 		for (int i = 0; i < fileDetails.size(); i++) {
 			// Get the current fileDetails and check cache for series info
 			FileDetails file = fileDetails.get(i);
-			EpisodeEntry ep = seriesCache.getEpisode(file.getAID(), file.getEpno());
+			EpisodeEntry ep = seriesCache.getEpisode(file.getAID(), file.getEpisodeType(), file.getEpno());
 			
 			// If the episode was not already cached then
 			// add it to the list to get from the database
@@ -654,6 +869,11 @@ public class MainWindow extends JFrame implements ActionListener {
 			FileDetails file = checkDB.get(i);
 			int aid = file.getAID();
 			int epno = file.getEpno();
+			char type = file.getEpisodeType();
+			
+			// Another file for the same episode may have fetched it already
+			if (seriesCache.getEpisode(aid, type, epno) != null)
+				continue;
 			
 			// Enforce packet delay
 			if (i > 0) {
@@ -665,7 +885,7 @@ public class MainWindow extends JFrame implements ActionListener {
 				}
 			}
 			
-			AniPacket response = CommMgr.sendEpisode(aid, epno);
+			AniPacket response = CommMgr.sendEpisode(aid, EpisodeEntry.formatEpno(type, epno));
 			int code = response.getCode();
 			String reply = response.getReply();
 			
@@ -687,7 +907,8 @@ public class MainWindow extends JFrame implements ActionListener {
 				episode.setAired((long)aired * 1000);
 				
 				SeriesEntry series = seriesCache.getSeries(aid);
-				series.getEpisodes().addEpisode(episode);
+				if (series.getEpisodes().addEpisode(episode) == EpisodeList.SUCCESS)
+					cacheLog.addEpisode(aid, episode);
 			}
 			else {
 				String msg;
@@ -892,18 +1113,21 @@ public class MainWindow extends JFrame implements ActionListener {
 	@Override
 	public void dispose() {
 		// Write the cache file to disk to be loaded later
-		File file = new File(CACHE_FILE);
 		try {
-			FileOutputStream fos = new FileOutputStream(file);
-			ObjectOutputStream out = new ObjectOutputStream(fos);
-			out.writeObject(seriesCache);
-			out.flush();
-			out.close();
+			cacheLog.close();
 		}
 		catch (IOException e) {
-			JOptionPane.showMessageDialog(this,	"Unable to update the cache file.\nYour cache file may be corrupt and is being deleted.",
+			// The old cache file is only replaced once the new one is complete, and the log is kept
+			JOptionPane.showMessageDialog(this,	"Unable to update the cache file.\nThe previous cache file has been kept.",
 					"Error - Unable to Update Cache", JOptionPane.ERROR_MESSAGE);
-			file.delete();
+		}
+		
+		try {
+			resolutions.save(new File(NAMES_FILE));
+		}
+		catch (IOException e) {
+			// The names matched before are still in the old file
+			System.err.println("Unable to save the matched series names: " + e.getMessage());
 		}
 		
 		super.dispose();
@@ -926,7 +1150,7 @@ public class MainWindow extends JFrame implements ActionListener {
 				createSeriesNFO(series, path);
 			} // end if (series)
 			
-			EpisodeEntry episode = seriesCache.getEpisode(aid, epno);
+			EpisodeEntry episode = seriesCache.getEpisode(aid, file.getEpisodeType(), epno);
 			createEpisodeNFO(episode, file);
 		} // end for (fileDetails)
 	} // end createNFOFiles
@@ -1002,12 +1226,29 @@ public class MainWindow extends JFrame implements ActionListener {
 		
 		// Handle Preferences menu item
 		if (e.getSource() == editPreferences) {
+			TitleFilter filter = TitleFilter.fromConfig();
 			ConfigDlg config = new ConfigDlg(this);
 			int result = config.showDialog();
-			if (result == ConfigDlg.OK)
+			if (result == ConfigDlg.OK) {
 				ConfigMgr.saveConfig();
+				
+				// Reload the titles if different ones are wanted
+				if (!filter.equals(TitleFilter.fromConfig()))
+					reloadTitles();
+			} // end if
 		} // end editPreferences
 		
+		// Handle Forget Title Match menu item
+		if (e.getSource() == editForget) {
+			FileDetails file = infoPanel.getSelectedFile();
+			
+			if (file == null)
+				JOptionPane.showMessageDialog(this, "Select a file to forget the anime title it was matched to.", 
+						"Error - No File Selected", JOptionPane.ERROR_MESSAGE);
+			else
+				forgetMatch(file);
+		} // end editForget
+		
 		// Handle Update menu item
 		if (e.getSource() == helpUpdate) {
 			updateDatabase();
@@ -1094,6 +1335,10 @@ public class MainWindow extends JFrame implements ActionListener {
 			fileList.repaint();
 		} // end refreshFileList
 		
+		public FileDetails getSelectedFile() {
+			return fileList.getSelectedValue();
+		} // end getSelectedFile
+		
 		public void setDetails(FileDetails file) {
 			String text;			// The text to display
 			
@@ -1117,7 +1362,7 @@ public class MainWindow extends JFrame implements ActionListener {
 				text += "Series Plot:\n" + series.getPlot() + "\n";
 				
 				// Episode Information
-				EpisodeEntry episode = series.getEpisodes().getEpisode(file.getEpno());
+				EpisodeEntry episode = series.getEpisodes().getEpisode(file.getEpisodeType(), file.getEpno());
 				text += "\n--EPISODE DETAILS--\n";
 				text += "Episode ID: " + episode.getEID() +"\n";
 				text += "Season " + episode.getSeason() + " Episode " + episode.getEpno() + "\n";
@@ -1146,44 +1391,63 @@ public class MainWindow extends JFrame implements ActionListener {
 		
 	} // end class InfoPanel
 	
-	class TitleSelectorDlg extends JDialog implements ActionListener {
+	class TitleSelectorDlg extends JDialog implements ActionListener, DocumentListener {
 		
 		/*** CONSTANTS ***/
 		private static final long serialVersionUID = 1L;
+		private static final int		SEARCH_DELAY = 150;		// ms to wait for more typing before searching
+		private static final int		SEARCH_LIMIT = 50;		// Most titles shown for a search
 		
 		/*** CLASS DATA MEMBERS ***/
 		// Window elements
 		private JButton				bOk;				// OK Button
 		private JButton				bCancel;			// Cancel button
 		private JList<AnimeTitle> 	listTitles;			// List of tiltes
+		private JTextField			searchField;		// Search all titles as they are typed
+		private DefaultListModel<AnimeTitle> model;		// Titles shown in the list
+		private Timer				searchTimer;		// Starts the search once typing pauses
+		private SwingWorker<AnimeTitles, Void> searchWorker;	// Search in progress, null if none
 		
 		// Data elements
 		AnimeTitles	titleList;			// List of titles
+		AnimeTitles	allTitles;			// All titles, searched from the search field
 		AnimeTitle	selectedTitle;		// The selected anime title
 		
 		// Constructor
-		public TitleSelectorDlg(AnimeTitles newList) {
+		public TitleSelectorDlg(AnimeTitles newList, AnimeTitles searchList) {
 			// Set the window title
 			this.setTitle("Anime Title Selection");
 			
 			// Set the title list
 			titleList = newList;
+			allTitles = searchList;
 			
 			// Populate the dialog box
 			// Create and populate the list model
-			DefaultListModel<AnimeTitle> model = new DefaultListModel<AnimeTitle>();
-			for (int i = 0; i < titleList.size(); i++)
-				model.add(i, titleList.get(i));
+			model = new DefaultListModel<AnimeTitle>();
 			
 			// Start with the list box and a panel to contain it
 			JPanel list = new JPanel();
+			list.setLayout(new BoxLayout(list, BoxLayout.Y_AXIS));
 			list.setBorder(BorderFactory.createTitledBorder("Possible Title Matches"));
 			listTitles = new JList<AnimeTitle>(model);
 			listTitles.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 			listTitles.setLayoutOrientation(JList.VERTICAL);
 			listTitles.setVisibleRowCount(10);
 			listTitles.setFixedCellWidth(200);
+			showTitles(titleList);
 			JScrollPane scrollList = new JScrollPane(listTitles);
+			
+			// Search field, searches once typing pauses
+			searchField = new JTextField(20);
+			searchField.getDocument().addDocumentListener(this);
+			searchTimer = new Timer(SEARCH_DELAY, this);
+			searchTimer.setRepeats(false);
+			JPanel searchPanel = new JPanel();
+			searchPanel.add(new JLabel("Search"));
+			searchPanel.add(searchField);
+			
+			list.add(searchPanel);
 			list.add(scrollList);
 			
 			// Add buttons to a panel
@@ -1206,9 +1470,80 @@ public class MainWindow extends JFrame implements ActionListener {
 			this.setModal(true);
 			this.pack();
 		} // end constructor
+		
+		// Replace the titles in the list, selecting the first one
+		private void showTitles(AnimeTitles titles) {
+			model.clear();
+			for (AnimeTitle title : titles.toArray())
+				model.addElement(title);
+			
+			if (!model.isEmpty())
+				listTitles.setSelectedIndex(0);
+		} // end showTitles
+		
+		// Search all the titles for the text typed, off the event thread
+		private void search() {
+			final String text = searchField.getText();
+			
+			// Drop a search still running for older text
+			if (searchWorker != null)
+				searchWorker.cancel(true);
+			searchWorker = null;
+			
+			// Go back to the matches found for the file
+			if (text.trim().length() == 0) {
+				showTitles(titleList);
+				return;
+			} // end if
+			
+			searchWorker = new SwingWorker<AnimeTitles, Void>() {
+				@Override
+				protected AnimeTitles doInBackground() {
+					return allTitles.prefixSearch(text, SEARCH_LIMIT);
+				}
+				
+				@Override
+				protected void done() {
+					if (isCancelled())
+						return;
+					
+					try {
+						showTitles(get());
+					}
+					catch (InterruptedException e) {
+						System.err.println(e.getMessage());
+					}
+					catch (ExecutionException e) {
+						System.err.println(e.getMessage());
+					}
+				}
+			};
+			searchWorker.execute();
+		} // end search
+		
+		@Override
+		public void insertUpdate(DocumentEvent e) {
+			searchTimer.restart();
+		}
+		
+		@Override
+		public void removeUpdate(DocumentEvent e) {
+			searchTimer.restart();
+		}
+		
+		@Override
+		public void changedUpdate(DocumentEvent e) {
+			searchTimer.restart();
+		}
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
+			// Typing has paused, run the search
+			if (e.getSource() == searchTimer) {
+				search();
+				return;
+			} // end searchTimer
+			
 			// If the OK button was selected
 			if (e.getSource() == bOk) {
 				selectedTitle = (AnimeTitle)listTitles.getSelectedValue();
@@ -1217,6 +1552,11 @@ public class MainWindow extends JFrame implements ActionListener {
 				selectedTitle = null;
 			}
 			
+			// Stop any search still going
+			searchTimer.stop();
+			if (searchWorker != null)
+				searchWorker.cancel(true);
+			
 			// Get rid of the window
 			this.setVisible(false);
 			this.dispose();
@@ -1329,6 +1669,10 @@ public class MainWindow extends JFrame implements ActionListener {
 		private JTextField		defaultPath;
 		private JButton			bBrowse;
 		private JCheckBox		autoUpdate;
+		private JCheckBox		titleDat;
+		private JTextField		titleLanguages;
+		private JCheckBox		officialTitles;
+		private JCheckBox		shortTitles;
 		private JButton			bOk;
 		private JButton			bCancel;
 		
@@ -1368,6 +1712,15 @@ public class MainWindow extends JFrame implements ActionListener {
 			
 			// Auto Update
 			autoUpdate = new JCheckBox(("Automatically Update AniDB XML File"), ConfigMgr.isAutoUpdate());
+			titleDat = new JCheckBox("Download the anime-titles.dat File", ConfigMgr.isTitleDat());
+			
+			// Title filter
+			TitleFilter filter = TitleFilter.fromConfig();
+			JLabel langLabel = new JLabel("Title Languages (blank for all)");
+			titleLanguages = new JTextField(15);
+			titleLanguages.setText(ConfigMgr.getTitleLanguages());
+			officialTitles = new JCheckBox("Official Titles", filter.keepsOfficial());
+			shortTitles = new JCheckBox("Short Titles", filter.keepsShort());
 			
 			// Add labels and input fields into panels to pair them
 			// User name panel
@@ -1404,7 +1757,22 @@ public class MainWindow extends JFrame implements ActionListener {
 			// Auto Update
 			JPanel updatePanel = new JPanel();
 			updatePanel.setBorder(BorderFactory.createTitledBorder("Anime Titles File Updating"));
+			updatePanel.setLayout(new BoxLayout(updatePanel, BoxLayout.Y_AXIS));
 			updatePanel.add(autoUpdate);
+			updatePanel.add(titleDat);
+			
+			// Title filter
+			JPanel langPanel = new JPanel();
+			langPanel.add(langLabel);
+			langPanel.add(titleLanguages);
+			JPanel typePanel = new JPanel();
+			typePanel.add(officialTitles);
+			typePanel.add(shortTitles);
+			JPanel filterPanel = new JPanel();
+			filterPanel.setLayout(new BoxLayout(filterPanel, BoxLayout.Y_AXIS));
+			filterPanel.setBorder(BorderFactory.createTitledBorder("Anime Titles to Load"));
+			filterPanel.add(langPanel);
+			filterPanel.add(typePanel);
 			
 			// Add all these components to a config settings panel
 			JPanel settingsPanel = new JPanel();
@@ -1415,6 +1783,8 @@ public class MainWindow extends JFrame implements ActionListener {
 			settingsPanel.add(pathPanel);
 			settingsPanel.add(Box.createRigidArea(new Dimension(0, 10)));
 			settingsPanel.add(updatePanel);
+			settingsPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+			settingsPanel.add(filterPanel);
 			
 			// Create the OK and cancel buttons
 			bOk = new JButton("OK");
@@ -1448,6 +1818,10 @@ public class MainWindow extends JFrame implements ActionListener {
 				ConfigMgr.setUser(user.getText());
 				ConfigMgr.setPass(pass.getText().toString());
 				ConfigMgr.setAutoUpdate(autoUpdate.isSelected());
+				ConfigMgr.setTitleDat(titleDat.isSelected());
+				ConfigMgr.setTitleLanguages(titleLanguages.getText());
+				ConfigMgr.setTitleTypes((officialTitles.isSelected() ? TitleFilter.OFFICIAL : "") + "," + 
+						(shortTitles.isSelected() ? TitleFilter.SHORT : ""));
 				boolean check = ConfigMgr.setDefaultPath(defaultPath.getText());
 				if (check) {
 					retValue = ConfigDlg.OK;
@@ -0,0 +1,203 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * ResolutionCache - Remembers which anime each series name parsed from a file name
+ * was matched to, whether the match was found by the search or picked by the user.
+ * Names are normalized so the same show written differently shares an entry. The
+ * least recently used names are dropped once the cache is full.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class ResolutionCache {
+	/*** CONSTANTS ***/
+	public static final int			NONE		=	0;			// aid returned for unknown names
+	public static final int			MAX_ENTRIES	=	5000;		// Most names remembered
+	
+	private static final int		MAGIC		=	0x414E5243;	// "ANRC"
+	private static final int		VERSION		=	1;
+	
+	/*** CLASS DATA MEMBERS ***/
+	private NameMap					names;			// aid for each normalized name, least recently used first
+	
+	public ResolutionCache() {
+		names = new NameMap();
+	} // end ResolutionCache
+	
+	/***
+	 * Read the cache from a file, an empty cache is returned if there is no
+	 * file or it can not be read.
+	 * @param file - The cache file
+	 * @return The cache
+	 */
+	public static ResolutionCache load(File file) {
+		ResolutionCache cache = new ResolutionCache();
+		
+		if (!file.exists())
+			return cache;
+		
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION)
+					throw new IOException("Unknown name cache format in " + file);
+				
+				// Entries were written least recently used first, so adding them in order keeps that
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					String name = in.readUTF();
+					cache.names.put(name, in.readInt());
+				} // end for
+			}
+			finally {
+				in.close();
+			}
+		} // end try
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			cache.names.clear();
+		} // end IOException
+		
+		return cache;
+	} // end load
+	
+	/***
+	 * Write the cache to a file. It is written next to the file and then moved over
+	 * it, so the old file is still whole if the write fails part way.
+	 * @param file - The cache file
+	 * @throws IOException if the file can not be written, the old file is kept
+	 */
+	public void save(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(temp);
+		
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(names.size());
+			for (Map.Entry<String, Integer> entry : names.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue());
+			} // end for
+			
+			// The new file has to be on disk before it takes the place of the old one
+			out.flush();
+			fos.getFD().sync();
+			fos.close();
+			fos = null;
+			
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			CacheFile.syncDirectory(file);
+		} // end try
+		finally {
+			// Nothing is left behind when the write or the move failed
+			if (fos != null)
+				fos.close();
+			temp.delete();
+		} // end finally
+	} // end save
+	
+	/***
+	 * Look up the anime a series name was matched to before.
+	 * @param name - Series name as parsed from the file name
+	 * @return The aid, NONE if the name is not known
+	 */
+	public int get(String name) {
+		Integer aid = names.get(key(name));
+		
+		return (aid == null) ? NONE : aid;
+	} // end get
+	
+	/***
+	 * Remember the anime a series name was matched to.
+	 * @param name - Series name as parsed from the file name
+	 * @param aid - AniDB ID of the anime
+	 */
+	public void put(String name, int aid) {
+		names.put(key(name), aid);
+	} // end put
+	
+	public void remove(String name) {
+		names.remove(key(name));
+	} // end remove
+	
+	/***
+	 * Forget every name matched to anime that were removed from AniDB.
+	 * @param removed - The removed anime
+	 * @return Number of names forgotten
+	 */
+	public int removeAll(Collection<AnimeTitle> removed) {
+		IntHashMap<AnimeTitle> aids = new IntHashMap<AnimeTitle>(removed.size());
+		int count = 0;
+		
+		for (AnimeTitle anime : removed)
+			aids.put(anime.getID(), anime);
+		
+		Iterator<Integer> it = names.values().iterator();
+		while (it.hasNext()) {
+			if (aids.containsKey(it.next())) {
+				it.remove();
+				count++;
+			}
+		} // end while
+		
+		return count;
+	} // end removeAll
+	
+	public int size() {
+		return names.size();
+	} // end size
+	
+	private static String key(String name) {
+		return TitleMatcher.normalize(name).trim();
+	} // end key
+	
+	// Map kept in access order that drops the least recently used name when full
+	private static class NameMap extends LinkedHashMap<String, Integer> {
+		private static final long serialVersionUID = 1L;
+		
+		NameMap() {
+			super(16, 0.75f, true);
+		} // end NameMap
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > MAX_ENTRIES;
+		} // end removeEldestEntry
+	} // end class NameMap
+	
+} // end class ResolutionCache
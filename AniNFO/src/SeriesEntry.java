@@ -1,4 +1,9 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 import javax.swing.JOptionPane;
@@ -27,23 +32,36 @@ public class SeriesEntry implements Serializable {
 	/*** CONSTANTS ***/
 	private static final long serialVersionUID = -3161937020365620069L;			// Serial ID
 	private static final String 	PIC_URL		= "http://img7.anidb.net/pics/anime/";
+	private static final String[]	NO_GENRES	= new String[0];
+	
+	// Written with the genres as the LinkedList they used to be kept in, see SeriesList
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("aid", int.class),
+		new ObjectStreamField("title", String.class),
+		new ObjectStreamField("plot", String.class),
+		new ObjectStreamField("genre", LinkedList.class),
+		new ObjectStreamField("genreCount", int.class),
+		new ObjectStreamField("rating", float.class),
+		new ObjectStreamField("episodes", EpisodeList.class),
+		new ObjectStreamField("picname", String.class)
+	};
 	
 	/*** CLASS DATA MEMBERS ***/
+	// The details that can change after the entry is cached are volatile so other threads
+	// see them, and the genre list is replaced rather than changed in place
 	private int						aid;			// AniDB ID
 	private String 					title;			// The series title
-	private String					plot;			// Series plot
-	private LinkedList<String>		genre;			// Series Genre List
-	private int						genreCount;		// Count of genre entries
-	private float					rating;			// Series rating
+	private volatile String			plot;			// Series plot
+	private volatile String[]		genre;			// Series Genre List
+	private volatile float			rating;			// Series rating
 	private EpisodeList				episodes;		// Listing of episodes sin the series
-	private String					picname;		// thumbnail file name
+	private volatile String			picname;		// thumbnail file name
 	
 	public SeriesEntry(String nTitle, int nAid) {
 		aid = nAid;								// Set aid
 		title = nTitle;							// Set the title
 		plot = null;							// null plot
-		genre = new LinkedList<String>();		// empty list of genres
-		genreCount = 0;							// Initialize count of genre entries
+		genre = NO_GENRES;						// empty list of genres
 		rating = 0.0f;							// Set rating to 0 by default
 		episodes = new EpisodeList();			// Generate an empty episode list
 	} // end SeriesEntry(title)
@@ -64,15 +82,33 @@ public class SeriesEntry implements Serializable {
 		return picname;
 	}
 	
+	/***
+	 * Set the full address of the thumbnail, as returned by getThumb.
+	 * @param url - The thumbnail address, null for none
+	 */
+	public void setThumbURL(String url) {
+		picname = url;
+	} // end setThumbURL
+	
+	/***
+	 * The genres one by one, in the order they were added.
+	 * @return A copy of the genre list
+	 */
+	public String[] getGenres() {
+		return genre.clone();
+	} // end getGenres
+	
 	public String getGenre() {
 		String result = null;
+		String[] current = genre;
 		
 		// If we do not have an empty list
 		// Create a comma separated string of all entries
-		if (!genre.isEmpty()) {
-			result = genre.getFirst();
-			for (int i = 1; i < genreCount; i++)
-				result = result + ", " + genre.get(i);
+		if (current.length > 0) {
+			StringBuilder list = new StringBuilder(current[0]);
+			for (int i = 1; i < current.length; i++)
+				list.append(", ").append(current[i]);
+			result = list.toString();
 		} // end if
 		
 		// Return the genre list (null if empty
@@ -103,12 +139,18 @@ public class SeriesEntry implements Serializable {
 		plot = nPlot;
 	} // end setPlot
 	
-	public void addGenre(String nGenre) {
+	public synchronized void addGenre(String nGenre) {
+		String[] current = genre;
+		
 		// Validate that genre hasn't already been added
-		if (genre.indexOf(nGenre) == -1) {
-			genre.add(nGenre);
-			genreCount++;
-		} // end if
+		for (int i = 0; i < current.length; i++) {
+			if (nGenre == null ? current[i] == null : nGenre.equals(current[i]))
+				return;
+		} // end for
+		
+		current = Arrays.copyOf(current, current.length + 1);
+		current[current.length - 1] = nGenre;
+		genre = current;
 	} // end addGenre
 
 	public EpisodeList getEpisodes() {
@@ -122,4 +164,33 @@ public class SeriesEntry implements Serializable {
 			JOptionPane.showMessageDialog(null, "Unable to add the episode entry for " + title + " Episode " + nEpisode.getEpno(), 
 					"Error - Failed to add Episode", JOptionPane.ERROR_MESSAGE);
 	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		String[] current = genre;
+		
+		fields.put("aid", aid);
+		fields.put("title", title);
+		fields.put("plot", plot);
+		fields.put("genre", new LinkedList<String>(Arrays.asList(current)));
+		fields.put("genreCount", current.length);
+		fields.put("rating", rating);
+		fields.put("episodes", episodes);
+		fields.put("picname", picname);
+		out.writeFields();
+	} // end writeObject
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		LinkedList<String> list = (LinkedList<String>)fields.get("genre", null);
+		
+		aid = fields.get("aid", 0);
+		title = (String)fields.get("title", null);
+		plot = (String)fields.get("plot", null);
+		genre = (list == null) ? NO_GENRES : list.toArray(new String[list.size()]);
+		rating = fields.get("rating", 0.0f);
+		episodes = (EpisodeList)fields.get("episodes", null);
+		picname = (String)fields.get("picname", null);
+	} // end readObject
 } // end class SeriesEntry
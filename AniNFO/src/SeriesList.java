@@ -1,4 +1,10 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedList;
 
 /***
@@ -31,46 +37,105 @@ public class SeriesList implements Serializable {
 	public static final int		NO_AID = -1;								// Attempted to add series with -1 AID
 	public static final int		SERIES_NOT_FOUND = -2;						// Return this error if the series was not found
 	public static final int  	EPISODE_NOT_FOUND = -3;						// REturn this error if the episode was not found
+	
+	// The list is kept in an array but still written as the LinkedList it used to be,
+	// so cache files from before and after the change can be read by either version
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField("seriesCount", int.class),
+		new ObjectStreamField("series", LinkedList.class)
+	};
 
 	/*** CLASS DATA MEMBERS ***/
+	// Any number of threads can use the list at once. Lookups take no lock, they go through
+	// the aid index, which is keyed by the primitive aid and can be read while it grows.
+	// Adding a series takes the list lock and checks the index again under it, so only one
+	// of two threads adding the same series adds it.
 	private int								seriesCount;	// Count of series entries
-	private LinkedList<SeriesEntry>			series;			// List of series
+	private SeriesEntry[]					series;			// List of series, the first seriesCount are used
+	private LongHashMap<SeriesEntry>		aidIndex;		// The same series by aid, not written to the cache
 	
 	public SeriesList() {
-		series = new LinkedList<SeriesEntry>();
+		series = new SeriesEntry[16];
 		seriesCount = 0;
+		aidIndex = new LongHashMap<SeriesEntry>();
+	}
+	
+	/***
+	 * Create a list holding the given series, building the aid index once rather than
+	 * once per series. The first series for an aid is the one kept.
+	 * @param list - The series in the order they were added
+	 */
+	public SeriesList(Collection<SeriesEntry> list) {
+		fill(list);
 	}
 	
 	public SeriesEntry getSeries(int sAid) {
-		SeriesEntry result = null;
-		
-		// Check each series for aid
-		for (int i = 0; i < seriesCount; i++) {
-			if (series.get(i).getAID() == sAid)
-				result = series.get(i);
-		} // end for
-		
-		return result;
+		return aidIndex.get(sAid);
 	}
 	
 	public int addSeries(SeriesEntry nSeries) {
-		int aid = nSeries.getAID();
-
 		// Make sure series has a valid aid
-		if (aid == -1) {
+		if (nSeries.getAID() == -1) {
 			return NO_AID;
 		}
 		
+		addSeriesIfAbsent(nSeries);
+		return SUCCESS;
+	}
+	
+	/***
+	 * Add a series unless one with the same aid is already cached. When two threads
+	 * add the same series at once only one of them is kept.
+	 * @param nSeries - The series to add, filled in before it is added
+	 * @return The cached series for the aid, the one given if it was added
+	 */
+	public SeriesEntry addSeriesIfAbsent(SeriesEntry nSeries) {
+		SeriesEntry cached = aidIndex.get(nSeries.getAID());
+		
 		// Only add if the series hasn't already been added
-		if (getSeries(aid) == null) {
-			series.add(nSeries);
-			seriesCount++;
-		} // end if
+		if (cached != null)
+			return cached;
 		
-		return SUCCESS;
+		return append(nSeries);
+	}
+	
+	/***
+	 * Add several series at once. Series already cached are left out.
+	 * @param nSeries - The series to add, filled in before they are added
+	 */
+	public synchronized void addAllSeries(Collection<SeriesEntry> nSeries) {
+		for (SeriesEntry temp : nSeries) {
+			if (temp.getAID() != -1)
+				append(temp);
+		} // end for
+	}
+	
+	public int size() {
+		return aidIndex.size();
+	}
+	
+	/***
+	 * The cached series in the order they were added. A series being added by
+	 * another thread at the same time can be left out.
+	 * @return A copy of the list
+	 */
+	public synchronized SeriesEntry[] toArray() {
+		return Arrays.copyOf(series, seriesCount);
 	}
 
 	public EpisodeEntry getEpisode(int sAid, int epno) {
+		return getEpisode(sAid, EpisodeEntry.REGULAR, epno);
+	}
+	
+	/***
+	 * Find a cached episode by its full key, so specials and regular episodes
+	 * with the same number are kept apart.
+	 * @param sAid - AniDB ID of the series
+	 * @param type - Episode type, EpisodeEntry.REGULAR or one of the special types
+	 * @param epno - Episode number
+	 * @return The episode, null if it is not cached
+	 */
+	public EpisodeEntry getEpisode(int sAid, char type, int epno) {
 		SeriesEntry temp = getSeries(sAid);
 		if (temp == null)
 			return null;
@@ -79,10 +144,61 @@ public class SeriesList implements Serializable {
 		if (epList == null)
 			return null;
 		
-		EpisodeEntry episode = epList.getEpisode(epno);
+		EpisodeEntry episode = epList.getEpisode(EpisodeEntry.seasonOf(type), type, epno);
 		if (episode == null)
 			return null;
 		
 		return episode;
 	}
+	
+	// Add a series to the list and the aid index unless another thread added its aid first
+	private synchronized SeriesEntry append(SeriesEntry nSeries) {
+		SeriesEntry cached = aidIndex.get(nSeries.getAID());
+		
+		if (cached != null)
+			return cached;
+		
+		if (seriesCount == series.length)
+			series = Arrays.copyOf(series, seriesCount * 2);
+		series[seriesCount++] = nSeries;
+		aidIndex.put(nSeries.getAID(), nSeries);
+		
+		return nSeries;
+	}
+	
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		
+		fields.put("seriesCount", seriesCount);
+		fields.put("series", new LinkedList<SeriesEntry>(Arrays.asList(series).subList(0, seriesCount)));
+		out.writeFields();
+	} // end writeObject
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		LinkedList<SeriesEntry> list = (LinkedList<SeriesEntry>)fields.get("series", null);
+		
+		if (list == null)
+			list = new LinkedList<SeriesEntry>();
+		
+		fill(list);
+	} // end readObject
+	
+	// Fill an empty list, the first entry for an aid is the one kept
+	private void fill(Collection<SeriesEntry> list) {
+		LongHashMap<SeriesEntry> index = new LongHashMap<SeriesEntry>(list.size());
+		
+		series = new SeriesEntry[Math.max(list.size(), 16)];
+		seriesCount = 0;
+		
+		for (SeriesEntry temp : list) {
+			if (temp != null && temp.getAID() != -1 && !index.containsKey(temp.getAID())) {
+				series[seriesCount++] = temp;
+				index.put(temp.getAID(), temp);
+			}
+		} // end for
+		
+		aidIndex = index;
+	} // end fill
 } // end class SeriesList
\ No newline at end of file
@@ -0,0 +1,90 @@
+import java.nio.ByteBuffer;
+
+/***
+ * SnapshotTitles - The titles of a title snapshot, read straight out of the mapped
+ * file without copying them. They are laid out the way a TitleStore writes its
+ * pages, and a handle is the offset of a title in them. Nothing can be added, an
+ * entry that gets new titles moves its titles into a TitleStore of its own.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class SnapshotTitles implements TitleSource {
+	/*** CLASS DATA MEMBERS ***/
+	private ByteBuffer				data;			// The bytes written by TitleStore.writeTo
+	private int						count;			// Distinct titles in them
+	
+	/***
+	 * Read titles written by TitleStore.writeTo.
+	 * @param stored - The bytes written, a handle is an offset into them
+	 * @param titles - Number of distinct titles in them
+	 */
+	public SnapshotTitles(ByteBuffer stored, int titles) {
+		data = stored;
+		count = titles;
+	} // end SnapshotTitles
+	
+	@Override
+	public String get(int handle) {
+		if (handle == TitleStore.NONE)
+			return null;
+		
+		int header = header(handle);
+		int length = header & TitleStore.MAX_LENGTH;
+		int offset = handle + 2;
+		char[] chars = new char[length];
+		
+		if ((header & TitleStore.WIDE) == 0) {
+			for (int i = 0; i < length; i++)
+				chars[i] = (char)(data.get(offset + i) & 0xFF);
+		}
+		else {
+			for (int i = 0; i < length; i++, offset += 2)
+				chars[i] = (char)(((data.get(offset) & 0xFF) << 8) | (data.get(offset + 1) & 0xFF));
+		} // end else
+		
+		return new String(chars);
+	} // end get
+	
+	/***
+	 * Check that a handle read from the snapshot points at a whole title.
+	 * @param handle - Handle to check
+	 * @return true if get can read it
+	 */
+	public boolean isValid(int handle) {
+		if (handle == TitleStore.NONE)
+			return true;
+		if (handle < 0 || handle + 2 > data.limit())
+			return false;
+		
+		int header = header(handle);
+		int length = header & TitleStore.MAX_LENGTH;
+		
+		return handle + 2 + ((header & TitleStore.WIDE) == 0 ? length : length * 2) <= data.limit();
+	} // end isValid
+	
+	/***
+	 * Number of distinct titles stored.
+	 */
+	public int size() {
+		return count;
+	} // end size
+	
+	// The length and width flag written before a title
+	private int header(int handle) {
+		return ((data.get(handle) & 0xFF) << 8) | (data.get(handle + 1) & 0xFF);
+	} // end header
+	
+} // end class SnapshotTitles
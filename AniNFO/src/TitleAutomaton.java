@@ -0,0 +1,208 @@
+import java.util.Arrays;
+
+/***
+ * TitleAutomaton - Aho-Corasick automaton over a batch of normalized series names.
+ * One pass over the normalized titles of an anime finds every name of the batch
+ * that appears in them, however many names there are.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleAutomaton {
+	/*** CONSTANTS ***/
+	private static final int		ROOT		=	0;			// Start state
+	private static final int		NONE		=	-1;			// No state or pattern
+	
+	/*** CLASS DATA MEMBERS ***/
+	// Transitions, hashed on state << 16 | character
+	private long[]					edgeKeys;		// State and character of each edge
+	private int[]					edgeTargets;	// State the edge leads to, NONE for an empty slot
+	private int						edgeMask;		// Edge table length - 1
+	
+	private int[]					fail;			// Longest proper suffix state of each state
+	private int[]					output;			// Pattern ending at each state, NONE if there is none
+	private int[]					nextOutput;		// Nearest suffix state with a pattern, NONE if there is none
+	private int						states;			// Number of states
+	
+	private int						patterns;		// Number of patterns
+	private int[]					stamps;			// Text each pattern was last found in
+	private int						stamp;			// Number of texts scanned
+	
+	/***
+	 * Build the automaton.
+	 * @param list - Normalized patterns, none may be empty
+	 */
+	public TitleAutomaton(char[][] list) {
+		int total = 1;
+		for (char[] pattern : list)
+			total += pattern.length;
+		
+		int capacity = 16;
+		while (capacity < total * 2)
+			capacity <<= 1;
+		
+		edgeKeys = new long[capacity];
+		edgeTargets = new int[capacity];
+		Arrays.fill(edgeTargets, NONE);
+		edgeMask = capacity - 1;
+		
+		fail = new int[total];
+		output = new int[total];
+		nextOutput = new int[total];
+		Arrays.fill(output, NONE);
+		Arrays.fill(nextOutput, NONE);
+		states = 1;
+		
+		patterns = list.length;
+		stamps = new int[patterns];
+		stamp = 0;
+		
+		// Build the trie of the patterns
+		for (int p = 0; p < list.length; p++) {
+			int state = ROOT;
+			for (char c : list[p]) {
+				int next = edge(state, c);
+				if (next == NONE) {
+					next = states++;
+					addEdge(state, c, next);
+				}
+				state = next;
+			} // end for
+			output[state] = p;
+		} // end for
+		
+		linkStates();
+	} // end TitleAutomaton
+	
+	/***
+	 * Find which patterns appear in a text, each pattern is reported once.
+	 * @param text - Normalized titles to search
+	 * @param found - Filled with the numbers of the patterns found, needs room for all patterns
+	 * @return Number of patterns found
+	 */
+	public int scan(char[] text, int[] found) {
+		int count = 0;
+		int state = ROOT;
+		
+		stamp++;
+		
+		for (int i = 0; i < text.length; i++) {
+			state = step(state, text[i]);
+			
+			// Report every pattern ending here, the longest first
+			for (int s = (output[state] != NONE) ? state : nextOutput[state]; s != NONE; s = nextOutput[s]) {
+				int p = output[s];
+				if (stamps[p] != stamp) {
+					stamps[p] = stamp;
+					found[count++] = p;
+				}
+			} // end for
+		} // end for
+		
+		return count;
+	} // end scan
+	
+	public int size() {
+		return patterns;
+	} // end size
+	
+	// Follow the character from a state, falling back along the suffix links
+	private int step(int state, char c) {
+		while (true) {
+			int next = edge(state, c);
+			if (next != NONE)
+				return next;
+			if (state == ROOT)
+				return ROOT;
+			state = fail[state];
+		} // end while
+	} // end step
+	
+	// Set the suffix and output links, breadth first so shorter states are done first
+	private void linkStates() {
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		
+		// Order the states by depth, the edges are not kept in order so collect them by parent
+		int[] parent = new int[states];
+		char[] via = new char[states];
+		for (int slot = 0; slot < edgeTargets.length; slot++) {
+			if (edgeTargets[slot] == NONE)
+				continue;
+			parent[edgeTargets[slot]] = (int)(edgeKeys[slot] >>> 16);
+			via[edgeTargets[slot]] = (char)edgeKeys[slot];
+		} // end for
+		
+		int[] childCount = new int[states + 1];
+		for (int s = 1; s < states; s++)
+			childCount[parent[s] + 1]++;
+		for (int s = 0; s < states; s++)
+			childCount[s + 1] += childCount[s];
+		int[] children = new int[states];
+		int[] fill = Arrays.copyOf(childCount, states);
+		for (int s = 1; s < states; s++)
+			children[fill[parent[s]]++] = s;
+		
+		queue[tail++] = ROOT;
+		while (head < tail) {
+			int state = queue[head++];
+			
+			for (int i = childCount[state]; i < childCount[state + 1]; i++) {
+				int child = children[i];
+				queue[tail++] = child;
+				
+				// The suffix link of a child is where the parent's suffix goes on the same character
+				if (state == ROOT)
+					fail[child] = ROOT;
+				else
+					fail[child] = step(fail[state], via[child]);
+				
+				int suffix = fail[child];
+				nextOutput[child] = (output[suffix] != NONE) ? suffix : nextOutput[suffix];
+			} // end for
+		} // end while
+	} // end linkStates
+	
+	private int edge(int state, char c) {
+		long key = ((long)state << 16) | c;
+		int slot = hash(key) & edgeMask;
+		
+		while (edgeTargets[slot] != NONE) {
+			if (edgeKeys[slot] == key)
+				return edgeTargets[slot];
+			slot = (slot + 1) & edgeMask;
+		} // end while
+		
+		return NONE;
+	} // end edge
+	
+	private void addEdge(int state, char c, int target) {
+		long key = ((long)state << 16) | c;
+		int slot = hash(key) & edgeMask;
+		
+		while (edgeTargets[slot] != NONE)
+			slot = (slot + 1) & edgeMask;
+		
+		edgeKeys[slot] = key;
+		edgeTargets[slot] = target;
+	} // end addEdge
+	
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	} // end hash
+	
+} // end class TitleAutomaton
@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/***
+ * TitleDatParser - Reads the line based anime-titles.dat dump from AniDB. Each line is
+ * aid|type|language|title where type is 1 for the main title, 2 for synonyms, 3 for
+ * short titles and 4 for official titles, lines starting with # are comments.
+ * 
+ * The lines are parsed straight out of the read buffer, the only objects created
+ * are the AnimeTitle entries and their title strings.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleDatParser {
+	/*** CONSTANTS ***/
+	public static final int			MAIN		=	1;			// Title types in the dump
+	public static final int			SYNONYM		=	2;
+	public static final int			SHORT		=	3;
+	public static final int			OFFICIAL	=	4;
+	
+	private static final Charset	UTF8		=	Charset.forName("UTF-8");
+	
+	/*** CLASS DATA MEMBERS ***/
+	private InputStream				in;			// The uncompressed dump
+	private TitleFilter				filter;		// Which titles to keep
+	private TitleStore				store;		// Title strings of this dump
+	private byte[]					buf;		// Read buffer
+	private int						start;		// Start of the current line in buf
+	private int						end;		// End of the data in buf
+	private int						line;		// Current line number for errors
+	
+	private TitleDatParser(InputStream in, TitleFilter filter) {
+		this.in = in;
+		this.filter = filter;
+		store = new TitleStore();
+		buf = new byte[DatabaseMgr.BUFFER];
+		start = 0;
+		end = 0;
+		line = 0;
+	} // end TitleDatParser
+	
+	/***
+	 * Read the titles from an uncompressed anime-titles.dat stream
+	 * @param in - The dump
+	 * @param filter - Which titles to keep
+	 * @return The titles in aid order
+	 * @throws IOException if the stream can not be read
+	 * @throws ParseException if a line is not in the expected format
+	 */
+	public static AnimeTitles parse(InputStream in, TitleFilter filter) throws IOException, ParseException {
+		return new TitleDatParser(in, filter).parse();
+	} // end parse
+	
+	private AnimeTitles parse() throws IOException, ParseException {
+		ArrayList<AnimeTitle> list = new ArrayList<AnimeTitle>();
+		AnimeTitle anime = null;		// Entry the current lines belong to
+		boolean sorted = true;			// Entries arrived in aid order
+		int eol;
+		
+		while ((eol = nextLine()) >= 0) {
+			int pos = start;
+			int stop = eol;
+			
+			// Skip a byte order mark at the start of the file
+			if (line == 1 && stop - pos >= 3 && buf[pos] == (byte)0xEF && buf[pos + 1] == (byte)0xBB && buf[pos + 2] == (byte)0xBF)
+				pos += 3;
+			
+			// Trim a Windows line ending and skip blank and comment lines
+			if (stop > pos && buf[stop - 1] == '\r')
+				stop--;
+			if (stop == pos || buf[pos] == '#') {
+				start = eol + 1;
+				continue;
+			}
+			
+			// aid
+			int aid = 0;
+			int digits = 0;
+			while (pos < stop && buf[pos] >= '0' && buf[pos] <= '9') {
+				aid = aid * 10 + (buf[pos++] - '0');
+				digits++;
+			}
+			if (digits == 0 || pos == stop || buf[pos++] != '|')
+				throw new ParseException("Invalid aid on line " + line, line);
+			
+			// type
+			int type = 0;
+			while (pos < stop && buf[pos] >= '0' && buf[pos] <= '9')
+				type = type * 10 + (buf[pos++] - '0');
+			if (pos == stop || buf[pos++] != '|')
+				throw new ParseException("Invalid title type on line " + line, line);
+			
+			// language
+			int lang = pos;
+			while (pos < stop && buf[pos] != '|')
+				pos++;
+			if (pos == stop)
+				throw new ParseException("Missing title on line " + line, line);
+			int langEnd = pos++;
+			
+			// Lines for one anime are together, start a new entry when the aid changes
+			if (anime == null || anime.getID() != aid) {
+				if (anime != null) {
+					list.add(anime);
+					sorted = sorted && anime.getID() < aid;
+				}
+				anime = new AnimeTitle(aid, store);
+			} // end if
+			
+			// The rest of the line is the title
+			if (filter.accepts(type, buf, lang, langEnd - lang)) {
+				String title = new String(buf, pos, stop - pos, UTF8);
+				
+				switch (type) {
+				case MAIN:
+					anime.setMainTitle(title);
+					break;
+				case OFFICIAL:
+					anime.addOfficialTitle(title);
+					break;
+				case SHORT:
+					anime.addShortTitle(title);
+					break;
+				} // end switch
+			} // end if
+			
+			start = eol + 1;
+		} // end while
+		
+		if (anime != null)
+			list.add(anime);
+		
+		return toTitles(list, sorted);
+	} // end parse
+	
+	/***
+	 * Find the end of the next line, reading more of the stream as needed.
+	 * @return Position of the line end in buf, -1 at the end of the stream
+	 */
+	private int nextLine() throws IOException {
+		int scan = start;
+		
+		while (true) {
+			for (; scan < end; scan++) {
+				if (buf[scan] == '\n') {
+					line++;
+					return scan;
+				}
+			} // end for
+			
+			// Move the partial line to the front, grow the buffer for very long lines
+			int length = end - start;
+			if (start > 0) {
+				System.arraycopy(buf, start, buf, 0, length);
+			}
+			else if (length == buf.length) {
+				byte[] bigger = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, bigger, 0, length);
+				buf = bigger;
+			}
+			start = 0;
+			end = length;
+			scan = length;
+			
+			int bits = in.read(buf, end, buf.length - end);
+			if (bits < 0) {
+				// The last line may not end with a new line
+				if (end > start) {
+					buf = ensureRoom(buf, end + 1);
+					buf[end] = '\n';
+					end++;
+					continue;
+				}
+				return -1;
+			} // end if
+			end += bits;
+		} // end while
+	} // end nextLine
+	
+	private static byte[] ensureRoom(byte[] data, int size) {
+		if (data.length >= size)
+			return data;
+		
+		byte[] bigger = new byte[size];
+		System.arraycopy(data, 0, bigger, 0, data.length);
+		return bigger;
+	} // end ensureRoom
+	
+	// Put the entries in aid order, joining entries for an aid that was split up in the dump
+	private static AnimeTitles toTitles(ArrayList<AnimeTitle> list, boolean sorted) {
+		AnimeTitle[] entries = list.toArray(new AnimeTitle[list.size()]);
+		AnimeTitles titles = new AnimeTitles(entries.length);
+		
+		if (!sorted)
+			Arrays.sort(entries, AnimeTitle.BY_AID);
+		
+		AnimeTitle last = null;
+		for (int i = 0; i < entries.length; i++) {
+			if (last != null && last.getID() == entries[i].getID()) {
+				last.addTitles(entries[i]);
+			}
+			else {
+				titles.add(entries[i]);
+				last = entries[i];
+			}
+		} // end for
+		
+		return titles;
+	} // end toTitles
+	
+} // end class TitleDatParser
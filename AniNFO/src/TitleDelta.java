@@ -0,0 +1,115 @@
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/***
+ * TitleDelta - The differences between two sets of AnimeTitles, matched by aid.
+ * Used to update the loaded titles with only the entries that changed when a
+ * new titles dump is downloaded.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleDelta {
+	/*** CLASS DATA MEMBERS ***/
+	private LinkedList<AnimeTitle>	added;			// Entries only in the new titles
+	private LinkedList<AnimeTitle>	removed;		// Entries only in the old titles
+	private LinkedList<AnimeTitle>	changed;		// New versions of entries whose titles changed
+	
+	public TitleDelta() {
+		added = new LinkedList<AnimeTitle>();
+		removed = new LinkedList<AnimeTitle>();
+		changed = new LinkedList<AnimeTitle>();
+	} // end TitleDelta
+	
+	/***
+	 * Compare two sets of titles by aid.
+	 * @param current - The titles currently loaded
+	 * @param updated - The titles read from the new dump
+	 * @return The added, removed and changed entries
+	 */
+	public static TitleDelta compare(AnimeTitles current, AnimeTitles updated) {
+		TitleDelta delta = new TitleDelta();
+		
+		// Loaded titles are kept in aid order, only sort a list that is not
+		AnimeTitle[] oldList = inOrder(current.toArray());
+		AnimeTitle[] newList = inOrder(updated.toArray());
+		
+		// Walk both lists together
+		int o = 0;
+		int n = 0;
+		while (o < oldList.length || n < newList.length) {
+			if (n == newList.length || (o < oldList.length && oldList[o].getID() < newList[n].getID())) {
+				delta.removed.add(oldList[o++]);
+			}
+			else if (o == oldList.length || newList[n].getID() < oldList[o].getID()) {
+				delta.added.add(newList[n++]);
+			}
+			else {
+				if (!oldList[o].sameTitles(newList[n]))
+					delta.changed.add(newList[n]);
+				o++;
+				n++;
+			} // end else
+		} // end while
+		
+		return delta;
+	} // end compare
+	
+	// The entries in aid order
+	private static AnimeTitle[] inOrder(AnimeTitle[] list) {
+		for (int i = 1; i < list.length; i++) {
+			if (list[i - 1].getID() > list[i].getID()) {
+				Arrays.sort(list, AnimeTitle.BY_AID);
+				break;
+			}
+		} // end for
+		
+		return list;
+	} // end inOrder
+	
+	public LinkedList<AnimeTitle> getAdded() {
+		return added;
+	}
+	
+	public LinkedList<AnimeTitle> getRemoved() {
+		return removed;
+	}
+	
+	public LinkedList<AnimeTitle> getChanged() {
+		return changed;
+	}
+	
+	public int addedCount() {
+		return added.size();
+	}
+	
+	public int removedCount() {
+		return removed.size();
+	}
+	
+	public int changedCount() {
+		return changed.size();
+	}
+	
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+	}
+	
+	@Override
+	public String toString() {
+		return addedCount() + " added, " + removedCount() + " removed, " + changedCount() + " changed";
+	} // end toString
+	
+} // end class TitleDelta
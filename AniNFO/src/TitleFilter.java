@@ -0,0 +1,197 @@
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+
+/***
+ * TitleFilter - Decides which titles from the titles dump are kept when it is loaded,
+ * by title type and language. The main title is always kept since it is the name
+ * used for the series.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleFilter {
+	/*** CONSTANTS ***/
+	public static final String		MAIN		=	"main";			// Title types in the dump
+	public static final String		OFFICIAL	=	"official";
+	public static final String		SHORT		=	"short";
+	
+	private static final Charset	ASCII		=	Charset.forName("US-ASCII");
+	
+	/*** CLASS DATA MEMBERS ***/
+	private HashSet<String>		languages;		// Languages to keep, null for all
+	private byte[][]			langBytes;		// Languages as ASCII for the .dat parser
+	private boolean				official;		// Keep official titles
+	private boolean				shortTitle;		// Keep short titles
+	private String				key;			// Normalized description of the filter
+	
+	/***
+	 * Create a filter from comma separated lists of languages and title types.
+	 * @param langs - Language codes to keep such as "x-jat,en,ja", blank for all
+	 * @param types - Title types to keep from "official,short"
+	 */
+	public TitleFilter(String langs, String types) {
+		String[] list = split(langs);
+		
+		languages = (list.length == 0) ? null : new HashSet<String>(Arrays.asList(list));
+		Arrays.sort(list);
+		langBytes = new byte[list.length][];
+		for (int i = 0; i < list.length; i++)
+			langBytes[i] = list[i].getBytes(ASCII);
+		
+		official = false;
+		shortTitle = false;
+		for (String type : split(types)) {
+			if (type.equals(OFFICIAL))
+				official = true;
+			else if (type.equals(SHORT))
+				shortTitle = true;
+		} // end for
+		
+		key = join(list) + ";" + (official ? OFFICIAL : "") + "," + (shortTitle ? SHORT : "");
+	} // end TitleFilter
+	
+	/***
+	 * The filter set in the configuration
+	 * @return Filter for the configured languages and title types
+	 */
+	public static TitleFilter fromConfig() {
+		return new TitleFilter(ConfigMgr.getTitleLanguages(), ConfigMgr.getTitleTypes());
+	} // end fromConfig
+	
+	/***
+	 * Check if a title should be kept
+	 * @param type - The title type from the dump
+	 * @param lang - The title language, null if not given
+	 * @return true if the title should be kept
+	 */
+	public boolean accepts(String type, String lang) {
+		boolean keep;
+		
+		if (type.equalsIgnoreCase(MAIN))
+			return true;
+		else if (type.equalsIgnoreCase(OFFICIAL))
+			keep = official;
+		else if (type.equalsIgnoreCase(SHORT))
+			keep = shortTitle;
+		else
+			keep = false;
+		
+		return keep && (languages == null || (lang != null && languages.contains(lang.toLowerCase(Locale.ROOT))));
+	} // end accepts
+	
+	/***
+	 * Check if a title from the .dat dump should be kept, the language is
+	 * compared in place so no String is made for titles that are dropped.
+	 * @param type - The numeric title type from the dump
+	 * @param buf - Buffer holding the language code
+	 * @param off - Start of the language code in buf
+	 * @param len - Length of the language code
+	 * @return true if the title should be kept
+	 */
+	public boolean accepts(int type, byte[] buf, int off, int len) {
+		boolean keep;
+		
+		if (type == TitleDatParser.MAIN)
+			return true;
+		else if (type == TitleDatParser.OFFICIAL)
+			keep = official;
+		else if (type == TitleDatParser.SHORT)
+			keep = shortTitle;
+		else
+			keep = false;
+		
+		if (!keep || languages == null)
+			return keep;
+		
+		for (byte[] lang : langBytes) {
+			if (lang.length == len && sameLanguage(lang, buf, off))
+				return true;
+		} // end for
+		
+		return false;
+	} // end accepts
+	
+	// Compare ignoring the case of the ASCII letters in the dump
+	private static boolean sameLanguage(byte[] lang, byte[] buf, int off) {
+		for (int i = 0; i < lang.length; i++) {
+			int c = buf[off + i];
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			if (c != lang[i])
+				return false;
+		} // end for
+		
+		return true;
+	} // end sameLanguage
+	
+	public boolean keepsOfficial() {
+		return official;
+	} // end keepsOfficial
+	
+	public boolean keepsShort() {
+		return shortTitle;
+	} // end keepsShort
+	
+	// Split a comma separated list into lower case entries, ignoring blanks
+	private static String[] split(String list) {
+		if (list == null)
+			return new String[0];
+		
+		String[] parts = list.toLowerCase(Locale.ROOT).split(",");
+		int count = 0;
+		
+		for (int i = 0; i < parts.length; i++) {
+			String part = parts[i].trim();
+			if (part.length() > 0)
+				parts[count++] = part;
+		} // end for
+		
+		return Arrays.copyOf(parts, count);
+	} // end split
+	
+	private static String join(String[] list) {
+		StringBuilder result = new StringBuilder();
+		
+		for (int i = 0; i < list.length; i++) {
+			if (i > 0)
+				result.append(',');
+			result.append(list[i]);
+		} // end for
+		
+		return result.toString();
+	} // end join
+	
+	/***
+	 * Filters with the same settings have the same string, this is stored with
+	 * the title snapshot so it is rebuilt when the filter changes.
+	 */
+	@Override
+	public String toString() {
+		return key;
+	} // end toString
+	
+	@Override
+	public boolean equals(Object other) {
+		return (other instanceof TitleFilter) && key.equals(((TitleFilter)other).key);
+	} // end equals
+	
+	@Override
+	public int hashCode() {
+		return key.hashCode();
+	} // end hashCode
+	
+} // end class TitleFilter
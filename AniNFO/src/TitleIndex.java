@@ -0,0 +1,330 @@
+import java.util.Arrays;
+
+/***
+ * TitleIndex - Trigram index over the normalized titles of each anime. A title
+ * can only contain a query if it contains every three character piece of the
+ * query, so intersecting the lists of anime for those pieces leaves a small set
+ * of candidates to check with AnimeTitle.hasTitle.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleIndex {
+	/*** CONSTANTS ***/
+	public static final int			GRAM		=	3;			// Characters in each indexed piece
+	
+	private static final int		EMPTY		=	-1;			// Marks an unused slot in the table
+	private static final int		CANDIDATES	=	200;		// Anime scored per ranked search, at least
+	private static final int		BUDGET		=	10000;		// Postings counted per ranked search, at most
+	
+	/*** CLASS DATA MEMBERS ***/
+	private AnimeTitle[]			entries;		// Indexed anime, postings refer to positions in here
+	private TitleSegments			segments;		// The same anime split up for checking candidates in parallel
+	private long[]					grams;			// Trigram of each table slot
+	private int[]					starts;			// Start of each slot's postings, EMPTY if the slot is unused
+	private int[]					counts;			// Number of postings for each slot
+	private int[]					postings;		// Entry positions for all trigrams, ascending per trigram
+	private int						mask;			// Table length - 1
+	private int						used;			// Slots in use
+	
+	/***
+	 * Build the index for a list of anime.
+	 * @param list - The anime to index, results are returned in this order
+	 * @param segments - The same list split into segments
+	 */
+	public TitleIndex(AnimeTitle[] list, TitleSegments segments) {
+		entries = list;
+		this.segments = segments;
+		
+		int capacity = 1024;
+		grams = new long[capacity];
+		starts = new int[capacity];
+		counts = new int[capacity];
+		Arrays.fill(starts, EMPTY);
+		mask = capacity - 1;
+		used = 0;
+		
+		// First count the anime for each trigram, starts holds the last anime counted
+		// while building so a trigram repeated within one anime is only counted once
+		for (int d = 0; d < entries.length; d++) {
+			char[] keys = entries[d].getKeys();
+			for (int i = 0; i + GRAM <= keys.length; i++) {
+				if (!isGram(keys, i))
+					continue;
+				
+				int slot = findOrAdd(gram(keys, i));
+				if (starts[slot] != d) {
+					starts[slot] = d;
+					counts[slot]++;
+				}
+			} // end for
+		} // end for
+		
+		// Lay the posting lists out one after the other
+		int total = 0;
+		for (int slot = 0; slot < grams.length; slot++) {
+			if (starts[slot] != EMPTY) {
+				starts[slot] = total;
+				total += counts[slot];
+				counts[slot] = 0;
+			}
+		} // end for
+		postings = new int[total];
+		
+		// Fill them in, anime are added in order so every list ends up sorted
+		for (int d = 0; d < entries.length; d++) {
+			char[] keys = entries[d].getKeys();
+			for (int i = 0; i + GRAM <= keys.length; i++) {
+				if (!isGram(keys, i))
+					continue;
+				
+				int slot = find(gram(keys, i));
+				int n = counts[slot];
+				if (n == 0 || postings[starts[slot] + n - 1] != d) {
+					postings[starts[slot] + n] = d;
+					counts[slot]++;
+				}
+			} // end for
+		} // end for
+	} // end TitleIndex
+	
+	/***
+	 * Find the anime with a title containing the query. Gives the same results
+	 * in the same order as checking hasTitle on every entry.
+	 * @param query - The prepared query
+	 * @return The matching anime, null if the query is too short to use the index
+	 */
+	public AnimeTitles search(TitleMatcher query) {
+		if (query.length() < GRAM)
+			return null;
+		
+		// Find the posting list of every trigram in the query
+		int pieces = query.length() - GRAM + 1;
+		int[] slots = new int[pieces];
+		
+		for (int i = 0; i < pieces; i++) {
+			int slot = find(gram(query, i));
+			
+			// No title has this piece so none can contain the query
+			if (slot < 0)
+				return new AnimeTitles();
+			
+			// Keep the slots ordered shortest list first so the intersection shrinks quickly
+			int j = i;
+			while (j > 0 && counts[slots[j - 1]] > counts[slot]) {
+				slots[j] = slots[j - 1];
+				j--;
+			}
+			slots[j] = slot;
+		} // end for
+		
+		// Intersect the lists, starting from the shortest
+		int[] candidates = Arrays.copyOfRange(postings, starts[slots[0]], starts[slots[0]] + counts[slots[0]]);
+		int size = candidates.length;
+		
+		for (int i = 1; i < pieces && size > 0; i++)
+			size = intersect(candidates, size, starts[slots[i]], counts[slots[i]]);
+		
+		// The trigrams can be spread over several titles or out of order, check each candidate
+		return segments.search(query, candidates, size);
+	} // end search
+	
+	/***
+	 * Find the anime with titles most like the query. The anime sharing the most
+	 * trigrams with the query are scored with TitleMatcher.similarity, the rest
+	 * are not looked at.
+	 * @param query - The prepared query
+	 * @param k - Most matches to return
+	 * @return Up to k matches best first, null if the query is too short to use the index
+	 */
+	public TitleMatch[] rank(TitleMatcher query, int k) {
+		if (query.length() < GRAM)
+			return null;
+		
+		int pieces = query.length() - GRAM + 1;
+		int[] shared = new int[entries.length];		// Query trigrams found in each anime
+		int[] touched = new int[Math.min(entries.length, postings.length)];
+		int found = 0;
+		int most = 0;
+		
+		// Take the distinct trigrams of the query rarest first
+		int[] slots = new int[pieces];
+		int distinct = 0;
+		
+		for (int i = 0; i < pieces; i++) {
+			int slot = find(gram(query, i));
+			if (slot < 0 || contains(slots, distinct, slot))
+				continue;
+			
+			int j = distinct++;
+			while (j > 0 && counts[slots[j - 1]] > counts[slot]) {
+				slots[j] = slots[j - 1];
+				j--;
+			}
+			slots[j] = slot;
+		} // end for
+		
+		// Count the trigrams each anime shares with the query. The rare ones say the most
+		// about which anime is meant, stop once the common ones get too costly to go through.
+		int visited = 0;
+		for (int i = 0; i < distinct && (i == 0 || visited + counts[slots[i]] <= BUDGET); i++) {
+			int slot = slots[i];
+			
+			for (int p = starts[slot]; p < starts[slot] + counts[slot]; p++) {
+				int d = postings[p];
+				if (shared[d]++ == 0)
+					touched[found++] = d;
+				if (shared[d] > most)
+					most = shared[d];
+			} // end for
+			visited += counts[slot];
+		} // end for
+		
+		// Only score the anime sharing the most, lowering the bar until there are enough
+		int[] levels = new int[most + 1];
+		for (int i = 0; i < found; i++)
+			levels[shared[touched[i]]]++;
+		
+		int limit = Math.max(CANDIDATES, k);
+		int bar = most;
+		int taken = (most > 0) ? levels[most] : 0;
+		while (bar > 1 && taken + levels[bar - 1] <= limit) {
+			bar--;
+			taken += levels[bar];
+		}
+		
+		TitleMatch.Best best = new TitleMatch.Best(k);
+		
+		for (int i = 0; i < found; i++) {
+			int d = touched[i];
+			if (shared[d] >= bar)
+				best.offer(entries[d], query.similarity(entries[d]), d);
+		} // end for
+		
+		return best.toArray();
+	} // end rank
+	
+	public int size() {
+		return entries.length;
+	} // end size
+	
+	// Keep the first size values of list that are also in the postings from start
+	// to start + count, both sorted. Returns the new size.
+	private int intersect(int[] list, int size, int start, int count) {
+		int kept = 0;
+		int j = start;
+		int end = start + count;
+		
+		for (int i = 0; i < size && j < end; i++) {
+			while (j < end && postings[j] < list[i])
+				j++;
+			if (j < end && postings[j] == list[i])
+				list[kept++] = list[i];
+		} // end for
+		
+		return kept;
+	} // end intersect
+
+	// Check the first count slots for a repeat
+	private static boolean contains(int[] list, int count, int slot) {
+		for (int i = 0; i < count; i++) {
+			if (list[i] == slot)
+				return true;
+		}
+		
+		return false;
+	} // end contains
+	
+	// A trigram can not span two titles
+	private static boolean isGram(char[] keys, int i) {
+		return keys[i] != TitleMatcher.SEPARATOR && keys[i + 1] != TitleMatcher.SEPARATOR && keys[i + 2] != TitleMatcher.SEPARATOR;
+	} // end isGram
+	
+	private static long gram(char[] keys, int i) {
+		return ((long)keys[i] << 32) | ((long)keys[i + 1] << 16) | keys[i + 2];
+	} // end gram
+	
+	private static long gram(TitleMatcher query, int i) {
+		return ((long)query.charAt(i) << 32) | ((long)query.charAt(i + 1) << 16) | query.charAt(i + 2);
+	} // end gram
+	
+	// Slot holding the trigram, -1 if it is not in the index
+	private int find(long key) {
+		int slot = hash(key) & mask;
+		
+		while (starts[slot] != EMPTY) {
+			if (grams[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		} // end while
+		
+		return -1;
+	} // end find
+	
+	// Slot holding the trigram, adding it if it is new
+	private int findOrAdd(long key) {
+		int slot = hash(key) & mask;
+		
+		while (starts[slot] != EMPTY) {
+			if (grams[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		} // end while
+		
+		// Claim the slot with a last anime that can not match any real one
+		grams[slot] = key;
+		starts[slot] = Integer.MAX_VALUE;
+		counts[slot] = 0;
+		used++;
+		
+		if (used * 2 > grams.length) {
+			grow();
+			return find(key);
+		}
+		
+		return slot;
+	} // end findOrAdd
+	
+	private void grow() {
+		long[] oldGrams = grams;
+		int[] oldStarts = starts;
+		int[] oldCounts = counts;
+		int capacity = oldGrams.length * 2;
+		
+		grams = new long[capacity];
+		starts = new int[capacity];
+		counts = new int[capacity];
+		Arrays.fill(starts, EMPTY);
+		mask = capacity - 1;
+		
+		for (int i = 0; i < oldGrams.length; i++) {
+			if (oldStarts[i] == EMPTY)
+				continue;
+			
+			int slot = hash(oldGrams[i]) & mask;
+			while (starts[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+			grams[slot] = oldGrams[i];
+			starts[slot] = oldStarts[i];
+			counts[slot] = oldCounts[i];
+		} // end for
+	} // end grow
+	
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	} // end hash
+	
+} // end class TitleIndex
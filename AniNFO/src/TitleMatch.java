@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/***
+ * TitleMatch - An anime found by a ranked title search and how closely its best
+ * title resembles the query, from 0 for nothing in common to 1 for the same
+ * main title.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleMatch {
+	/*** CONSTANTS ***/
+	public static final float		AUTO_ACCEPT	=	0.8f;		// Best matches scoring this much are used without asking
+	
+	// Best score first, ties keep the order of the title list
+	public static final Comparator<TitleMatch> BY_SCORE = new Comparator<TitleMatch>() {
+		@Override
+		public int compare(TitleMatch a, TitleMatch b) {
+			if (a.score != b.score)
+				return a.score > b.score ? -1 : 1;
+			return a.position - b.position;
+		}
+	};
+	
+	/*** CLASS DATA MEMBERS ***/
+	private AnimeTitle				anime;			// The anime found
+	private float					score;			// Weighted similarity of its best title
+	private int						position;		// Position in the searched list
+	
+	public TitleMatch(AnimeTitle anime, float score, int position) {
+		this.anime = anime;
+		this.score = score;
+		this.position = position;
+	} // end TitleMatch
+	
+	public AnimeTitle getAnime() {
+		return anime;
+	} // end getAnime
+	
+	public float getScore() {
+		return score;
+	} // end getScore
+	
+	public boolean isAccepted() {
+		return score >= AUTO_ACCEPT;
+	} // end isAccepted
+	
+	@Override
+	public String toString() {
+		return anime + " (" + Math.round(score * 100) + "%)";
+	} // end toString
+	
+	/***
+	 * Keeps the best k matches offered to it, best first. Only the matches
+	 * that make the list are created.
+	 */
+	static class Best {
+		private TitleMatch[]		list;		// Matches kept, best first
+		private int					count;		// Matches in the list
+		
+		Best(int k) {
+			list = new TitleMatch[Math.max(k, 0)];
+			count = 0;
+		} // end Best
+		
+		void offer(AnimeTitle anime, float score, int position) {
+			if (score <= 0 || list.length == 0)
+				return;
+			if (count == list.length && !ahead(score, position, list[count - 1]))
+				return;
+			
+			int i = (count < list.length) ? count++ : count - 1;
+			while (i > 0 && ahead(score, position, list[i - 1])) {
+				list[i] = list[i - 1];
+				i--;
+			}
+			list[i] = new TitleMatch(anime, score, position);
+		} // end offer
+		
+		// Offer every match kept by another list
+		void addAll(Best other) {
+			for (int i = 0; i < other.count; i++)
+				offer(other.list[i].anime, other.list[i].score, other.list[i].position);
+		} // end addAll
+		
+		// Check if a match belongs before another one, the same order as BY_SCORE
+		private static boolean ahead(float score, int position, TitleMatch other) {
+			return score > other.score || (score == other.score && position < other.position);
+		} // end ahead
+		
+		TitleMatch[] toArray() {
+			return Arrays.copyOf(list, count);
+		} // end toArray
+	} // end class Best
+	
+} // end class TitleMatch
@@ -0,0 +1,276 @@
+import java.text.Normalizer;
+
+/***
+ * TitleMatcher - Finds a query inside the normalized titles of an anime. Titles and
+ * queries are normalized the same way: compatibility forms such as full width
+ * letters are replaced by their plain forms, accents are dropped and the case is
+ * folded without depending on the locale. The query is then found with a
+ * Boyer-Moore-Horspool search, the skip table is built once per query.
+ * 
+ * For ranked searches the query is also compared to each title by the trigrams
+ * they share. A matcher keeps counts for that while it works so it should only
+ * be used by one thread.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleMatcher {
+	/*** CONSTANTS ***/
+	public static final char		SEPARATOR	=	'\u0000';	// Between the titles in a key array
+	
+	private static final int		TABLE		=	256;		// Skip table size, characters are hashed into it
+	private static final char		PAD			=	'\u0001';	// Pads the ends of a title for trigrams
+	
+	public static final float		MAIN_WEIGHT		=	1.0f;	// Similarity weight for each title type
+	public static final float		OFFICIAL_WEIGHT	=	0.9f;
+	public static final float		SHORT_WEIGHT	=	0.8f;
+	
+	/*** CLASS DATA MEMBERS ***/
+	private char[]					pattern;		// The normalized query
+	private int[]					skip;			// Shift for the text character under the pattern end
+	private long[]					gramKeys;		// Padded trigrams of the query, hashed
+	private int[]					gramCounts;		// Times each trigram is in the query, 0 for an empty slot
+	private int[]					gramStamps;		// Title the used count belongs to
+	private int[]					gramUsed;		// Times each trigram was matched in the current title
+	private int						gramMask;		// Table length - 1
+	private int						stamp;			// Number of titles scored
+	
+	/***
+	 * Prepare a query for matching.
+	 * @param query - Text to look for
+	 */
+	public TitleMatcher(String query) {
+		pattern = normalize(query).toCharArray();
+		skip = new int[TABLE];
+		
+		// Characters that share a table entry get the smallest shift of the
+		// group, shifting less than the real amount is always safe
+		int last = pattern.length - 1;
+		for (int i = 0; i < TABLE; i++)
+			skip[i] = pattern.length;
+		for (int i = 0; i < last; i++)
+			skip[pattern[i] & (TABLE - 1)] = last - i;
+	} // end TitleMatcher
+	
+	/***
+	 * Copy a prepared query so it can be scored on another thread. The pattern
+	 * and skip table are only read so they are shared, the trigram counts used
+	 * by similarity are not.
+	 * @param other - The query to copy
+	 */
+	TitleMatcher(TitleMatcher other) {
+		pattern = other.pattern;
+		skip = other.skip;
+	} // end TitleMatcher
+	
+	/***
+	 * Normalize a title or query for matching.
+	 * @param text - The text as entered or read from the dump
+	 * @return The normalized text
+	 */
+	public static String normalize(String text) {
+		if (text == null)
+			return "";
+		
+		String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+		StringBuilder result = new StringBuilder(decomposed.length());
+		
+		for (int i = 0; i < decomposed.length(); ) {
+			int c = decomposed.codePointAt(i);
+			i += Character.charCount(c);
+			
+			// Drop the accents split off Latin letters and control characters,
+			// those are used as separators. Kana voicing marks are kept.
+			if ((c >= 0x0300 && c <= 0x036F) || Character.isISOControl(c))
+				continue;
+			
+			result.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c)));
+		} // end for
+		
+		return result.toString();
+	} // end normalize
+	
+	/***
+	 * Normalize a list of titles into one array, with SEPARATOR between them.
+	 * @param titles - The titles, a null entry is left empty
+	 * @return The normalized titles
+	 */
+	public static char[] join(String... titles) {
+		StringBuilder result = new StringBuilder();
+		
+		for (int i = 0; i < titles.length; i++) {
+			if (i > 0)
+				result.append(SEPARATOR);
+			result.append(normalize(titles[i]));
+		} // end for
+		
+		char[] keys = new char[result.length()];
+		result.getChars(0, keys.length, keys, 0);
+		return keys;
+	} // end join
+	
+	/***
+	 * Check if the query is in any of the titles.
+	 * @param text - Normalized titles from join
+	 * @return true if the query was found
+	 */
+	public boolean matches(char[] text) {
+		int last = pattern.length - 1;
+		
+		if (last < 0)
+			return true;
+		
+		for (int pos = 0; pos + last < text.length; ) {
+			char end = text[pos + last];
+			
+			if (end == pattern[last]) {
+				int i = last - 1;
+				while (i >= 0 && text[pos + i] == pattern[i])
+					i--;
+				if (i < 0)
+					return true;
+			} // end if
+			
+			pos += skip[end & (TABLE - 1)];
+		} // end for
+		
+		return false;
+	} // end matches
+	
+	/***
+	 * How closely the titles of an anime resemble the query. Each title is given the
+	 * Dice coefficient of its padded trigrams and the query's, weighted by the title
+	 * type, and the best one is the score.
+	 * @param anime - The anime to score
+	 * @return Score from 0 to 1
+	 */
+	public float similarity(AnimeTitle anime) {
+		char[] keys = anime.getKeys();
+		int official = anime.officialTitleCount();
+		float best = 0;
+		int start = 0;
+		int title = 0;		// Which title of the anime, the main title comes first
+		
+		if (gramKeys == null)
+			hashGrams();
+		
+		for (int i = 0; i <= keys.length; i++) {
+			if (i < keys.length && keys[i] != SEPARATOR)
+				continue;
+			
+			float weight = (title == 0) ? MAIN_WEIGHT : (title <= official ? OFFICIAL_WEIGHT : SHORT_WEIGHT);
+			
+			// Skip the work if this title can not beat the best so far
+			if (weight > best && i > start) {
+				float score = weight * dice(keys, start, i);
+				if (score > best)
+					best = score;
+			}
+			
+			title++;
+			start = i + 1;
+		} // end for
+		
+		return best;
+	} // end similarity
+	
+	/***
+	 * Dice coefficient of the padded trigrams of the query and keys[from, to),
+	 * counting repeated trigrams as often as they appear in both.
+	 */
+	private float dice(char[] keys, int from, int to) {
+		int total = to - from + 2;
+		int shared = 0;
+		
+		// A new stamp clears the counts left by the previous title
+		stamp++;
+		
+		for (int i = 0; i < total; i++) {
+			long key = gram(keys, from, to, from + i - 2);
+			int slot = hash(key) & gramMask;
+			
+			while (gramCounts[slot] > 0 && gramKeys[slot] != key)
+				slot = (slot + 1) & gramMask;
+			
+			if (gramCounts[slot] == 0)
+				continue;
+			
+			if (gramStamps[slot] != stamp) {
+				gramStamps[slot] = stamp;
+				gramUsed[slot] = 0;
+			}
+			if (gramUsed[slot] < gramCounts[slot]) {
+				gramUsed[slot]++;
+				shared++;
+			}
+		} // end for
+		
+		return 2.0f * shared / (pattern.length + 2 + total);
+	} // end dice
+	
+	// Count the padded trigrams of the query in a small hash table
+	private void hashGrams() {
+		int total = pattern.length + 2;
+		int capacity = 16;
+		
+		while (capacity < total * 2)
+			capacity <<= 1;
+		
+		gramKeys = new long[capacity];
+		gramCounts = new int[capacity];
+		gramStamps = new int[capacity];
+		gramUsed = new int[capacity];
+		gramMask = capacity - 1;
+		
+		for (int i = 0; i < total; i++) {
+			long key = gram(pattern, 0, pattern.length, i - 2);
+			int slot = hash(key) & gramMask;
+			
+			while (gramCounts[slot] > 0 && gramKeys[slot] != key)
+				slot = (slot + 1) & gramMask;
+			gramKeys[slot] = key;
+			gramCounts[slot]++;
+		} // end for
+	} // end hashGrams
+	
+	// Trigram starting at i of text[from, to) padded with PAD characters
+	private static long gram(char[] text, int from, int to, int i) {
+		return ((long)padded(text, from, to, i) << 32) | ((long)padded(text, from, to, i + 1) << 16) | 
+				padded(text, from, to, i + 2);
+	} // end gram
+	
+	private static char padded(char[] text, int from, int to, int i) {
+		return (i < from || i >= to) ? PAD : text[i];
+	} // end padded
+	
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	} // end hash
+	
+	// The normalized query
+	public String getPattern() {
+		return new String(pattern);
+	} // end getPattern
+	
+	public int length() {
+		return pattern.length;
+	} // end length
+	
+	public char charAt(int i) {
+		return pattern[i];
+	} // end charAt
+	
+} // end class TitleMatcher
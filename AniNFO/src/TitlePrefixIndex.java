@@ -0,0 +1,236 @@
+/***
+ * TitlePrefixIndex - Sorted list of where every title and every word within a title
+ * starts in the normalized titles of each anime. The entries starting with a typed
+ * prefix are next to each other, so they are found with a binary search.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitlePrefixIndex {
+	/*** CLASS DATA MEMBERS ***/
+	private AnimeTitle[]			entries;		// Indexed anime
+	private char[][]				keys;			// Normalized titles of each anime
+	private long[]					starts;			// Anime position << 32 | offset into its keys, sorted by the text there
+	
+	/***
+	 * Build the index for a list of anime.
+	 * @param list - The anime to index
+	 */
+	public TitlePrefixIndex(AnimeTitle[] list) {
+		entries = list;
+		keys = new char[list.length][];
+		
+		// Collect where each title and word starts
+		int count = 0;
+		for (int d = 0; d < list.length; d++) {
+			keys[d] = list[d].getKeys();
+			for (int i = 0; i < keys[d].length; i++) {
+				if (isStart(keys[d], i))
+					count++;
+			}
+		} // end for
+		
+		starts = new long[count];
+		count = 0;
+		for (int d = 0; d < list.length; d++) {
+			for (int i = 0; i < keys[d].length; i++) {
+				if (isStart(keys[d], i))
+					starts[count++] = ((long)d << 32) | i;
+			}
+		} // end for
+		
+		sort(starts, new long[count], 0, count);
+	} // end TitlePrefixIndex
+	
+	/***
+	 * Find the anime with a title, or a word in a title, starting with the prefix.
+	 * Titles starting with it come before ones that only have a word starting with it.
+	 * @param prefix - Text typed so far
+	 * @param limit - Most anime to return
+	 * @return The anime found, in title order
+	 */
+	public AnimeTitles search(String prefix, int limit) {
+		return search(prefix, limit, null, null);
+	} // end search
+	
+	/***
+	 * Search this index together with an index of the anime added to the list since
+	 * this one was built, as if both were one index.
+	 * @param prefix - Text typed so far
+	 * @param limit - Most anime to return
+	 * @param added - Index of the anime added since, null if there are none
+	 * @param live - The anime in the list now by aid, anime of this index that are not in it
+	 * are left out. null if all of them still are.
+	 * @return The anime found, in title order
+	 */
+	public AnimeTitles search(String prefix, int limit, TitlePrefixIndex added, IntHashMap<AnimeTitle> live) {
+		char[] query = TitleMatcher.normalize(prefix).trim().toCharArray();
+		AnimeTitle[] found = new AnimeTitle[limit];
+		int count = 0;
+		
+		if (query.length == 0)
+			return new AnimeTitles();
+		
+		int low = first(query);
+		int addedLow = (added == null) ? 0 : added.first(query);
+		
+		// Whole titles first, then words inside titles
+		for (int pass = 0; pass < 2 && count < limit; pass++) {
+			int i = low;
+			int j = addedLow;
+			
+			while (count < limit) {
+				boolean mine = i < starts.length && comparePrefix(starts[i], query) == 0;
+				boolean theirs = added != null && j < added.starts.length && added.comparePrefix(added.starts[j], query) == 0;
+				if (!mine && !theirs)
+					break;
+				
+				// Take the next entry in title order from either index
+				TitlePrefixIndex from = this;
+				long entry;
+				if (mine && (!theirs || compareText(keys, starts[i], added.keys, added.starts[j]) <= 0))
+					entry = starts[i++];
+				else {
+					from = added;
+					entry = added.starts[j++];
+				}
+				
+				int d = (int)(entry >>> 32);
+				int offset = (int)entry;
+				AnimeTitle anime = from.entries[d];
+				boolean whole = offset == 0 || from.keys[d][offset - 1] == TitleMatcher.SEPARATOR;
+				boolean current = from == added || live == null || live.get(anime.getID()) == anime;
+				
+				if (whole == (pass == 0) && current && !contains(found, count, anime))
+					found[count++] = anime;
+			} // end while
+		} // end for
+		
+		AnimeTitles results = new AnimeTitles(count);
+		for (int i = 0; i < count; i++)
+			results.add(found[i]);
+		
+		return results;
+	} // end search
+	
+	// First entry that is not less than the prefix
+	private int first(char[] query) {
+		int low = 0;
+		int high = starts.length;
+		
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (comparePrefix(starts[mid], query) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		} // end while
+		
+		return low;
+	} // end first
+	
+	public int size() {
+		return starts.length;
+	} // end size
+	
+	// Titles start after a separator, words after anything that is not a letter or digit
+	private static boolean isStart(char[] text, int i) {
+		if (text[i] == TitleMatcher.SEPARATOR || !Character.isLetterOrDigit(text[i]))
+			return false;
+		
+		return i == 0 || !Character.isLetterOrDigit(text[i - 1]);
+	} // end isStart
+	
+	private static boolean contains(AnimeTitle[] list, int count, AnimeTitle anime) {
+		for (int i = 0; i < count; i++) {
+			if (list[i] == anime)
+				return true;
+		}
+		
+		return false;
+	} // end contains
+	
+	// Compare the text at an entry to the prefix, 0 if the text starts with it
+	private int comparePrefix(long entry, char[] prefix) {
+		char[] text = keys[(int)(entry >>> 32)];
+		int pos = (int)entry;
+		
+		for (int i = 0; i < prefix.length; i++, pos++) {
+			if (pos == text.length || text[pos] == TitleMatcher.SEPARATOR)
+				return -1;
+			if (text[pos] != prefix[i])
+				return text[pos] - prefix[i];
+		} // end for
+		
+		return 0;
+	} // end comparePrefix
+	
+	// Compare the text at two entries up to the end of their titles
+	private int compare(long a, long b) {
+		int result = compareText(keys, a, keys, b);
+		
+		if (result != 0)
+			return result;
+		
+		return (a < b) ? -1 : (a == b ? 0 : 1);
+	} // end compare
+	
+	// Compare the text at entries of two indexes up to the end of their titles, 0 if the same
+	private static int compareText(char[][] keysA, long a, char[][] keysB, long b) {
+		char[] textA = keysA[(int)(a >>> 32)];
+		char[] textB = keysB[(int)(b >>> 32)];
+		int posA = (int)a;
+		int posB = (int)b;
+		
+		while (true) {
+			boolean endA = posA == textA.length || textA[posA] == TitleMatcher.SEPARATOR;
+			boolean endB = posB == textB.length || textB[posB] == TitleMatcher.SEPARATOR;
+			
+			if (endA || endB) {
+				if (endA && endB)
+					return 0;
+				return endA ? -1 : 1;
+			} // end if
+			if (textA[posA] != textB[posB])
+				return textA[posA] - textB[posB];
+			
+			posA++;
+			posB++;
+		} // end while
+	} // end compareText
+	
+	// Merge sort of list[from, to) by the text at each entry, work is scratch space
+	private void sort(long[] list, long[] work, int from, int to) {
+		if (to - from < 2)
+			return;
+		
+		int mid = (from + to) >>> 1;
+		sort(list, work, from, mid);
+		sort(list, work, mid, to);
+		
+		// Already in order
+		if (compare(list[mid - 1], list[mid]) <= 0)
+			return;
+		
+		System.arraycopy(list, from, work, from, to - from);
+		for (int i = from, a = from, b = mid; i < to; i++) {
+			if (b >= to || (a < mid && compare(work[a], work[b]) <= 0))
+				list[i] = work[a++];
+			else
+				list[i] = work[b++];
+		} // end for
+	} // end sort
+	
+} // end class TitlePrefixIndex
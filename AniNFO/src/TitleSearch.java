@@ -0,0 +1,311 @@
+import java.util.Arrays;
+
+/***
+ * TitleSearch - The search structures of an AnimeTitles list. They are built over
+ * the list as it was at one time. Updating the list keeps them and sets the anime
+ * added or changed since then beside them, and the anime no longer in the list are
+ * left out of what they find. They are only built again once so much has changed
+ * that searching the anime on the side costs more than building would.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleSearch {
+	/*** CONSTANTS ***/
+	private static final int		REBUILD_MIN		=	1024;	// Changes kept on the side before building again, at least
+	private static final int		REBUILD_SHARE	=	16;		// Or one in this many of the anime, if that is more
+	private static final AnimeTitle[]	NONE		=	new AnimeTitle[0];
+	
+	/*** CLASS DATA MEMBERS ***/
+	private AnimeTitle[]			entries;		// The list the structures were built over
+	private IntHashMap<AnimeTitle>	live;			// The anime in the list now by aid
+	private AnimeTitle[]			added;			// Anime added or changed since, in aid order
+	private int						stale;			// Entries no longer in the list
+	private TitleSegments			segments;		// The entries split up for searching in parallel, null if not indexed
+	private TitleIndex				index;			// Trigram index of the entries, null if not indexed
+	private TitleTiers				tiers;			// Exact title lookups, built when first used if not indexed
+	private TitleTiers				addedTiers;		// The same for the added anime, built when first used
+	private TitlePrefixIndex		prefixIndex;	// Prefix index for typeahead, built when first used
+	private TitlePrefixIndex		addedPrefix;	// The same for the added anime, built when first used
+	
+	/***
+	 * Set up the structures for a list.
+	 * @param list - The anime in the list, in list order
+	 * @param current - The same anime by aid
+	 * @param indexed - true to build the trigram index and segments now, false to
+	 * search without them and build the exact and prefix lookups when first used
+	 */
+	public TitleSearch(AnimeTitle[] list, IntHashMap<AnimeTitle> current, boolean indexed) {
+		entries = list;
+		live = current;
+		added = NONE;
+		stale = 0;
+		
+		if (indexed) {
+			segments = new TitleSegments(list, DatabaseMgr.getPool());
+			index = new TitleIndex(list, segments);
+			tiers = new TitleTiers(list);
+		} // end if
+	} // end TitleSearch
+	
+	// The same structures with other anime on the side
+	private TitleSearch(TitleSearch other, IntHashMap<AnimeTitle> current, AnimeTitle[] newAdded, int newStale) {
+		entries = other.entries;
+		live = current;
+		added = newAdded;
+		stale = newStale;
+		segments = other.segments;
+		index = other.index;
+		
+		synchronized (other) {
+			tiers = other.tiers;
+			prefixIndex = other.prefixIndex;
+		}
+	} // end TitleSearch
+	
+	/***
+	 * The structures for the list after some anime were taken out and others put in.
+	 * @param gone - Anime taken out of the list, removed ones and the old versions of changed ones
+	 * @param fresh - Anime put in, new ones and the new versions of changed ones, in aid order
+	 * @param current - The anime in the list now by aid
+	 * @return The structures for the updated list, null if they should be built again
+	 */
+	public TitleSearch update(AnimeTitle[] gone, AnimeTitle[] fresh, IntHashMap<AnimeTitle> current) {
+		int newStale = stale;
+		
+		for (AnimeTitle temp : gone) {
+			if (!isAdded(temp))
+				newStale++;
+		}
+		
+		// Merge the anime still on the side with the new ones, keeping aid order
+		AnimeTitle[] merged = new AnimeTitle[added.length + fresh.length];
+		int count = 0;
+		int f = 0;
+		
+		for (AnimeTitle temp : added) {
+			if (current.get(temp.getID()) != temp)
+				continue;
+			while (f < fresh.length && fresh[f].getID() < temp.getID())
+				merged[count++] = fresh[f++];
+			merged[count++] = temp;
+		} // end for
+		while (f < fresh.length)
+			merged[count++] = fresh[f++];
+		
+		if (count + newStale > Math.max(REBUILD_MIN, entries.length / REBUILD_SHARE))
+			return null;
+		
+		return new TitleSearch(this, current, Arrays.copyOf(merged, count), newStale);
+	} // end update
+	
+	/***
+	 * Check if the trigram index and segments were built.
+	 * @return true if they were
+	 */
+	public boolean isIndexed() {
+		return index != null;
+	} // end isIndexed
+	
+	/***
+	 * Find the anime with a title containing the query.
+	 * @param query - The prepared query
+	 * @return The matching anime in list order
+	 */
+	public AnimeTitles search(TitleMatcher query) {
+		AnimeTitles found = null;
+		
+		// The index gives the same results as checking every entry, the segments check them in parallel
+		if (index != null)
+			found = index.search(query);
+		if (found == null && segments != null)
+			found = segments.search(query);
+		if (found == null) {
+			found = new AnimeTitles();
+			for (AnimeTitle temp : entries) {
+				if (temp.hasTitle(query))
+					found.add(temp);
+			}
+		} // end if
+		
+		if (added.length == 0 && stale == 0)
+			return found;
+		
+		// Leave out what is gone and merge in the anime on the side that match
+		AnimeTitles results = new AnimeTitles(found.size() + 1);
+		int a = 0;
+		
+		for (int i = 0; i < found.size(); i++) {
+			AnimeTitle temp = found.get(i);
+			
+			for (; a < added.length && added[a].getID() < temp.getID(); a++) {
+				if (added[a].hasTitle(query))
+					results.add(added[a]);
+			}
+			if (isLive(temp))
+				results.add(temp);
+		} // end for
+		for (; a < added.length; a++) {
+			if (added[a].hasTitle(query))
+				results.add(added[a]);
+		}
+		
+		return results;
+	} // end search
+	
+	/***
+	 * Find the anime whose titles are most like the query.
+	 * @param query - The prepared query
+	 * @param k - Most matches to return
+	 * @return Up to k matches, best first
+	 */
+	public TitleMatch[] rank(TitleMatcher query, int k) {
+		TitleMatch[] found = null;
+		int wanted = k + stale;		// Entries that are gone can take up places
+		
+		if (index != null)
+			found = index.rank(query, wanted);
+		if (found == null && segments != null)
+			found = segments.rank(query, wanted);
+		if (found == null) {
+			TitleMatch.Best best = new TitleMatch.Best(wanted);
+			for (int i = 0; i < entries.length; i++)
+				best.offer(entries[i], query.similarity(entries[i]), i);
+			found = best.toArray();
+		} // end if
+		
+		if (added.length == 0 && stale == 0)
+			return found;
+		
+		// Ties keep list order, which is aid order, when the anime on the side are mixed in
+		TitleMatch.Best best = new TitleMatch.Best(k);
+		
+		for (TitleMatch match : found) {
+			if (isLive(match.getAnime()))
+				best.offer(match.getAnime(), match.getScore(), match.getAnime().getID());
+		}
+		for (AnimeTitle temp : added)
+			best.offer(temp, query.similarity(temp), temp.getID());
+		
+		return best.toArray();
+	} // end rank
+	
+	/***
+	 * Find the anime with a title that is exactly the given name, main titles first,
+	 * then official titles, then short titles.
+	 * @param name - The name to look up
+	 * @return The anime of the first title type with a match, null if no title matched
+	 */
+	public AnimeTitles exact(String name) {
+		TitleTiers base = getTiers();
+		
+		if (added.length == 0 && stale == 0)
+			return base.search(name);
+		
+		String key = TitleMatcher.normalize(name).trim();
+		TitleTiers side = getAddedTiers();
+		
+		for (int tier = TitleTiers.MAIN; tier <= TitleTiers.SHORT; tier++) {
+			AnimeTitle[] found = base.find(key, tier);
+			AnimeTitle[] more = side.find(key, tier);
+			AnimeTitles results = new AnimeTitles(found.length + more.length);
+			int a = 0;
+			
+			for (AnimeTitle temp : found) {
+				while (a < more.length && more[a].getID() < temp.getID())
+					results.add(more[a++]);
+				if (isLive(temp))
+					results.add(temp);
+			} // end for
+			while (a < more.length)
+				results.add(more[a++]);
+			
+			if (results.size() > 0)
+				return results;
+		} // end for
+		
+		return null;
+	} // end exact
+	
+	/***
+	 * Find the anime with a title or a word in a title starting with the given text.
+	 * @param prefix - The text typed so far
+	 * @param limit - Most anime to return
+	 * @return The anime found, ones with a title starting with the text first
+	 */
+	public AnimeTitles prefix(String prefix, int limit) {
+		TitlePrefixIndex base = getPrefixIndex();
+		
+		if (added.length == 0 && stale == 0)
+			return base.search(prefix, limit);
+		
+		return base.search(prefix, limit, getAddedPrefix(), live);
+	} // end prefix
+	
+	private synchronized TitleTiers getTiers() {
+		if (tiers == null)
+			tiers = new TitleTiers(entries);
+		
+		return tiers;
+	} // end getTiers
+	
+	private synchronized TitleTiers getAddedTiers() {
+		if (addedTiers == null)
+			addedTiers = new TitleTiers(added);
+		
+		return addedTiers;
+	} // end getAddedTiers
+	
+	private synchronized TitlePrefixIndex getPrefixIndex() {
+		if (prefixIndex == null)
+			prefixIndex = new TitlePrefixIndex(entries);
+		
+		return prefixIndex;
+	} // end getPrefixIndex
+	
+	private synchronized TitlePrefixIndex getAddedPrefix() {
+		if (addedPrefix == null)
+			addedPrefix = new TitlePrefixIndex(added);
+		
+		return addedPrefix;
+	} // end getAddedPrefix
+	
+	// An entry the structures were built with is still in the list
+	private boolean isLive(AnimeTitle anime) {
+		return live.get(anime.getID()) == anime;
+	} // end isLive
+	
+	// Check if an anime is one of the anime on the side
+	private boolean isAdded(AnimeTitle anime) {
+		int low = 0;
+		int high = added.length - 1;
+		
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int aid = added[mid].getID();
+			
+			if (aid < anime.getID())
+				low = mid + 1;
+			else if (aid > anime.getID())
+				high = mid - 1;
+			else
+				return added[mid] == anime;
+		} // end while
+		
+		return false;
+	} // end isAdded
+
+} // end class TitleSearch
+	
\ No newline at end of file
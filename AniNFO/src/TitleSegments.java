@@ -0,0 +1,222 @@
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/***
+ * TitleSegments - The loaded titles split into fixed size segments so a search can
+ * check the segments in parallel on the shared fork-join pool. Each segment holds
+ * a run of the list in aid order, so joining the results segment by segment keeps
+ * them in aid order. Searches with too little work to be worth splitting up are
+ * done on the calling thread.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleSegments {
+	/*** CONSTANTS ***/
+	public static final int			SEGMENT_SIZE	=	2048;		// Anime in each segment
+	public static final int			PARALLEL_MIN	=	8192;		// Fewest anime to check before searching in parallel
+	
+	/*** CLASS DATA MEMBERS ***/
+	private AnimeTitle[][]			segments;		// The anime, SEGMENT_SIZE to a segment
+	private int						size;			// Number of anime
+	private ForkJoinPool			pool;			// Pool the segments are searched on
+	
+	/***
+	 * Split a list of anime into segments.
+	 * @param list - The anime in aid order, positions in it are used by search
+	 * @param pool - Pool to search on
+	 */
+	public TitleSegments(AnimeTitle[] list, ForkJoinPool pool) {
+		int count = (list.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+		
+		segments = new AnimeTitle[count][];
+		for (int s = 0; s < count; s++) {
+			int from = s * SEGMENT_SIZE;
+			int length = Math.min(SEGMENT_SIZE, list.length - from);
+			
+			segments[s] = new AnimeTitle[length];
+			System.arraycopy(list, from, segments[s], 0, length);
+		} // end for
+		
+		size = list.length;
+		this.pool = pool;
+	} // end TitleSegments
+	
+	/***
+	 * Find the anime with a title containing the query.
+	 * @param query - The prepared query
+	 * @return The matching anime in aid order
+	 */
+	public AnimeTitles search(TitleMatcher query) {
+		return search(query, null, size);
+	} // end search
+	
+	/***
+	 * Check which of the given anime have a title containing the query.
+	 * @param query - The prepared query
+	 * @param positions - Ascending positions in the list of the anime to check, null for all
+	 * @param count - Number of positions to use
+	 * @return The matching anime in aid order
+	 */
+	public AnimeTitles search(TitleMatcher query, int[] positions, int count) {
+		Search task = new Search(query, positions, bounds(positions, count), 0, segments.length);
+		ArrayList<AnimeTitle> found = parallel(count) ? pool.invoke(task) : task.compute();
+		
+		AnimeTitles results = new AnimeTitles(found.size());
+		for (AnimeTitle temp : found)
+			results.add(temp);
+		
+		return results;
+	} // end search
+	
+	/***
+	 * Score every anime against the query.
+	 * @param query - The prepared query
+	 * @param k - Most matches to return
+	 * @return Up to k matches, best first
+	 */
+	public TitleMatch[] rank(TitleMatcher query, int k) {
+		Rank task = new Rank(query, k, 0, segments.length);
+		TitleMatch.Best best = parallel(size) ? pool.invoke(task) : task.compute();
+		
+		return best.toArray();
+	} // end rank
+	
+	public int size() {
+		return size;
+	} // end size
+	
+	private boolean parallel(int work) {
+		return work >= PARALLEL_MIN && pool.getParallelism() > 1;
+	} // end parallel
+	
+	// Where each segment's positions start, segment s has positions[bounds[s], bounds[s+1])
+	private int[] bounds(int[] positions, int count) {
+		if (positions == null)
+			return null;
+		
+		int[] bounds = new int[segments.length + 1];
+		int p = 0;
+		
+		for (int s = 0; s < segments.length; s++) {
+			bounds[s] = p;
+			while (p < count && positions[p] < (s + 1) * SEGMENT_SIZE)
+				p++;
+		} // end for
+		bounds[segments.length] = p;
+		
+		return bounds;
+	} // end bounds
+	
+	// Checks a range of segments, splitting it in half until there is one segment left
+	private class Search extends RecursiveTask<ArrayList<AnimeTitle>> {
+		private static final long serialVersionUID = 1L;
+		
+		private TitleMatcher	query;		// Query to look for, only used to match so it can be shared
+		private int[]			positions;	// Anime to check, null for all
+		private int[]			bounds;		// Positions of each segment
+		private int				first;		// First segment to check
+		private int				last;		// One past the last segment to check
+		
+		Search(TitleMatcher query, int[] positions, int[] bounds, int first, int last) {
+			this.query = query;
+			this.positions = positions;
+			this.bounds = bounds;
+			this.first = first;
+			this.last = last;
+		}
+		
+		@Override
+		protected ArrayList<AnimeTitle> compute() {
+			if (last - first > 1 && inForkJoinPool()) {
+				int mid = (first + last) >>> 1;
+				Search left = new Search(query, positions, bounds, first, mid);
+				Search right = new Search(query, positions, bounds, mid, last);
+				
+				left.fork();
+				ArrayList<AnimeTitle> result = right.compute();
+				ArrayList<AnimeTitle> head = left.join();
+				head.addAll(result);
+				
+				return head;
+			} // end if
+			
+			ArrayList<AnimeTitle> found = new ArrayList<AnimeTitle>();
+			for (int s = first; s < last; s++) {
+				AnimeTitle[] segment = segments[s];
+				
+				if (positions == null) {
+					for (AnimeTitle temp : segment) {
+						if (temp.hasTitle(query))
+							found.add(temp);
+					}
+				}
+				else {
+					for (int i = bounds[s]; i < bounds[s + 1]; i++) {
+						AnimeTitle temp = segment[positions[i] - s * SEGMENT_SIZE];
+						if (temp.hasTitle(query))
+							found.add(temp);
+					}
+				} // end else
+			} // end for
+			
+			return found;
+		} // end compute
+	} // end class Search
+	
+	// Scores a range of segments, each task scores with its own copy of the query
+	private class Rank extends RecursiveTask<TitleMatch.Best> {
+		private static final long serialVersionUID = 1L;
+		
+		private TitleMatcher	query;		// Query to score against
+		private int				k;			// Most matches to keep
+		private int				first;		// First segment to score
+		private int				last;		// One past the last segment to score
+		
+		Rank(TitleMatcher query, int k, int first, int last) {
+			this.query = query;
+			this.k = k;
+			this.first = first;
+			this.last = last;
+		}
+		
+		@Override
+		protected TitleMatch.Best compute() {
+			if (last - first > 1 && inForkJoinPool()) {
+				int mid = (first + last) >>> 1;
+				Rank left = new Rank(new TitleMatcher(query), k, first, mid);
+				Rank right = new Rank(new TitleMatcher(query), k, mid, last);
+				
+				left.fork();
+				TitleMatch.Best result = right.compute();
+				TitleMatch.Best head = left.join();
+				head.addAll(result);
+				
+				return head;
+			} // end if
+			
+			TitleMatch.Best best = new TitleMatch.Best(k);
+			for (int s = first; s < last; s++) {
+				AnimeTitle[] segment = segments[s];
+				for (int i = 0; i < segment.length; i++)
+					best.offer(segment[i], query.similarity(segment[i]), s * SEGMENT_SIZE + i);
+			} // end for
+			
+			return best;
+		} // end compute
+	} // end class Rank
+	
+} // end class TitleSegments
@@ -0,0 +1,296 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/***
+ * TitleSnapshot - Reads and writes a binary copy of the parsed AnimeTitles so the
+ * titles dump does not have to be parsed again on every start. The snapshot
+ * stores the size, modified time and ETag of the dump and the title filter it
+ * was built with and is only used while they all still match.
+ * 
+ * The titles are kept in the snapshot the same way a TitleStore keeps them, so
+ * reading one maps the file and points the entries at it as SnapshotTitles
+ * without decoding any titles. A mapped file can not be replaced on every system, so each snapshot
+ * is written under a new name and the older ones are removed once they can be.
+ * 
+ * File layout (big endian):
+ *   int magic, int version, long dump size, long dump modified, UTF ETag,
+ *   UTF filter, int anime count, int entry size, int title count, int store size,
+ *   then per anime: int aid, int flags, int main title, int official count,
+ *   int title count, int[] titles,
+ *   then the stored titles.
+ * Titles are stored as TitleStore handles, which are offsets into the stored titles.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleSnapshot {
+	/*** CONSTANTS ***/
+	private static final int		MAGIC		=	0x414E5449;		// "ANTI"
+	private static final int		VERSION		=	3;				// Snapshot layout version
+	private static final int		MOVIE		=	0x01;			// Flag for movie entries
+	private static final Charset	UTF8		=	Charset.forName("UTF-8");
+	
+	/***
+	 * Memory maps the newest snapshot made from the dump and points the titles at it.
+	 * Snapshots that are not used are removed.
+	 * @param file - The snapshot file, snapshots are named after it
+	 * @param dump - The titles dump in use
+	 * @param etag - ETag the dump was downloaded with, null if none
+	 * @param filter - Description of the title filter in use
+	 * @return The titles, or null if there is no usable snapshot for this dump
+	 */
+	public static AnimeTitles read(File file, File dump, String etag, String filter) {
+		File[] snapshots = list(file);
+		AnimeTitles titles = null;
+		
+		for (int i = 0; i < snapshots.length; i++) {
+			if (titles == null)
+				titles = read(snapshots[i], dump.length(), dump.lastModified(), (etag == null) ? "" : etag, filter);
+			else
+				snapshots[i].delete();		// May still be mapped on some systems, then it goes next time
+		} // end for
+		
+		return titles;
+	} // end read
+	
+	/***
+	 * Writes the titles to a new snapshot file. The file is written beside it first
+	 * and then moved into place, older snapshots are removed if they can be.
+	 * @param file - The snapshot file, snapshots are named after it
+	 * @param dump - The titles dump the titles were read from
+	 * @param etag - ETag the dump was downloaded with, null if none
+	 * @param filter - Description of the title filter the titles were read with
+	 * @param titles - The titles to store
+	 * @return true if the snapshot was written
+	 */
+	public static boolean write(File file, File dump, String etag, String filter, AnimeTitles titles) {
+		AnimeTitle[]	anime	= titles.toArray();
+		TitleStore		store	= new TitleStore();		// Only the titles still in use go in
+		int				size	= 0;
+		
+		for (int i = 0; i < anime.length; i++) {
+			anime[i] = new AnimeTitle(anime[i], store);
+			size += 5 + anime[i].getHandles().length;
+		} // end for
+		
+		File[] old = list(file);
+		File snapshot = name(file, System.currentTimeMillis());
+		File temp = new File(snapshot.getPath() + ".tmp");
+		FileOutputStream stream = null;
+		
+		try {
+			stream = new FileOutputStream(temp);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, DatabaseMgr.BUFFER));
+			
+			// Header
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(dump.length());
+			out.writeLong(dump.lastModified());
+			out.writeUTF((etag == null) ? "" : etag);
+			out.writeUTF(filter);
+			out.writeInt(anime.length);
+			out.writeInt(size);
+			out.writeInt(store.size());
+			out.writeInt((int)store.bytesUsed());
+			
+			// Anime entries
+			for (int i = 0; i < anime.length; i++) {
+				int[] handles = anime[i].getHandles();
+				
+				out.writeInt(anime[i].getID());
+				out.writeInt(anime[i].isMovie() ? MOVIE : 0);
+				out.writeInt(anime[i].getMainHandle());
+				out.writeInt(anime[i].officialTitleCount());
+				out.writeInt(handles.length);
+				for (int n = 0; n < handles.length; n++)
+					out.writeInt(handles[n]);
+			} // end for
+			
+			store.writeTo(out);
+			out.flush();
+			stream.getFD().sync();
+			out.close();
+			stream = null;
+			
+			Files.move(temp.toPath(), snapshot.toPath());
+		} // end try
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+			
+			try {
+				if (stream != null)
+					stream.close();
+			}
+			catch (IOException ex) {
+				System.err.println(ex.getMessage());
+			}
+			
+			temp.delete();
+			return false;
+		} // end IOException
+		
+		for (int i = 0; i < old.length; i++)
+			old[i].delete();		// May still be mapped on some systems, then it goes next time
+		
+		return true;
+	} // end write
+	
+	// Map one snapshot, returns null if it was not made from this dump or is damaged
+	private static AnimeTitles read(File file, long size, long modified, String etag, String filter) {
+		RandomAccessFile raf = null;
+		
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			
+			// Make sure the snapshot was built from this dump
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getLong() != size || buf.getLong() != modified)
+				return null;
+			if (!etag.equals(readUTF(buf)) || !filter.equals(readUTF(buf)))
+				return null;
+			
+			int animeCount = buf.getInt();
+			int entrySize = buf.getInt();
+			int titleCount = buf.getInt();
+			int storeSize = buf.getInt();
+			
+			if (animeCount < 0 || entrySize < 0 || storeSize < 0 || (long)entrySize * 4 + storeSize != buf.remaining()) {
+				System.err.println("Title snapshot is corrupt");
+				return null;
+			} // end if
+			
+			IntBuffer entries = buf.asIntBuffer();
+			entries.limit(entrySize);
+			buf.position(buf.position() + entrySize * 4);
+			SnapshotTitles store = new SnapshotTitles(buf.slice(), titleCount);
+			AnimeTitles titles = new AnimeTitles(animeCount);
+			
+			// Point each anime entry at its titles
+			for (int i = 0; i < animeCount; i++) {
+				int aid = entries.get();
+				int flags = entries.get();
+				int main = entries.get();
+				int official = entries.get();
+				int[] handles = new int[entries.get()];
+				
+				entries.get(handles);
+				if (official < 0 || official > handles.length || !store.isValid(main))
+					throw new IndexOutOfBoundsException();
+				for (int n = 0; n < handles.length; n++) {
+					if (!store.isValid(handles[n]))
+						throw new IndexOutOfBoundsException();
+				}
+				
+				titles.add(new AnimeTitle(aid, store, main, handles, official, (flags & MOVIE) != 0));
+			} // end for anime
+			
+			return titles;
+		} // end try
+		catch (IOException e) {
+			System.err.println(e.getMessage());
+		}
+		catch (BufferUnderflowException e) {
+			System.err.println("Title snapshot is truncated");
+		}
+		catch (RuntimeException e) {
+			System.err.println("Title snapshot is corrupt");
+		}
+		finally {
+			try {
+				if (raf != null)
+					raf.close();		// The mapping stays valid after the file is closed
+			}
+			catch (IOException e) {
+				System.err.println(e.getMessage());
+			}
+		} // end finally
+		
+		return null;
+	} // end read
+	
+	// Read a string written by DataOutput.writeUTF, titles filters and ETags are plain text
+	private static String readUTF(ByteBuffer buf) {
+		byte[] data = new byte[buf.getShort() & 0xFFFF];
+		buf.get(data);
+		
+		return new String(data, UTF8);
+	} // end readUTF
+	
+	// Snapshots named after the file, newest first
+	private static File[] list(File file) {
+		final String name = file.getName();
+		final String prefix = name.substring(0, name.lastIndexOf('.') + 1);
+		final String suffix = name.substring(name.lastIndexOf('.'));
+		File dir = file.getAbsoluteFile().getParentFile();
+		
+		File[] found = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String found) {
+				return found.equals(name) || (found.startsWith(prefix) && found.endsWith(suffix));
+			}
+		});
+		if (found == null)
+			return new File[0];
+		
+		Arrays.sort(found, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(stamp(b, prefix, suffix), stamp(a, prefix, suffix));
+			}
+		});
+		
+		return found;
+	} // end list
+	
+	// The time a snapshot was written, from its name
+	private static long stamp(File file, String prefix, String suffix) {
+		String name = file.getName();
+		
+		try {
+			return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+		}
+		catch (RuntimeException e) {
+			return -1;		// The one snapshot from before they were named by time
+		}
+	} // end stamp
+	
+	// Name of a snapshot written at the given time, animetitles.idx becomes animetitles.<time>.idx
+	private static File name(File file, long time) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		File snapshot;
+		
+		do {
+			snapshot = new File(file.getAbsoluteFile().getParentFile(), name.substring(0, dot + 1) + time++ + name.substring(dot));
+		} while (snapshot.exists());
+		
+		return snapshot;
+	} // end name
+	
+} // end class TitleSnapshot
@@ -0,0 +1,30 @@
+/***
+ * TitleSource - Somewhere the title strings of AnimeTitle entries are kept and
+ * looked up by int handle. A TitleStore can have titles added to it, the titles
+ * of a snapshot can only be read.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public interface TitleSource {
+	
+	/***
+	 * Get a stored title.
+	 * @param handle - Handle of the title
+	 * @return The title, null for TitleStore.NONE
+	 */
+	public String get(int handle);
+	
+} // end interface TitleSource
@@ -0,0 +1,257 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/***
+ * TitleStore - Storage for the title strings of a set of AnimeTitle entries. Each
+ * distinct title is kept once in pages of bytes and is referred to by an int
+ * handle. Titles that only use Latin-1 characters take a byte per character,
+ * the rest two. The same titles turn up across sequels and across the title
+ * types, so they are only stored the first time they are seen.
+ * 
+ * Each load of the titles gets stores of its own, so the titles of a list that
+ * is no longer used are dropped along with it. Titles are added under a lock,
+ * get and find take none. The pages can be written out and read back as
+ * SnapshotTitles, which keeps the bytes and the handles the same.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleStore implements TitleSource {
+	/*** CONSTANTS ***/
+	public static final int			NONE		=	-1;			// Handle of a missing (null) title
+	public static final int			MAX_LENGTH	=	0x7FFF;		// Longest title kept, longer ones are cut off
+	
+	private static final int		PAGE_BITS	=	16;			// Each page is 64KB
+	private static final int		PAGE_SIZE	=	1 << PAGE_BITS;
+	static final int				WIDE		=	0x8000;		// Header flag for titles stored two bytes a character
+	
+	/*** CLASS DATA MEMBERS ***/
+	// A title's bytes are written before its handle is put in the table or handed out,
+	// and the table slots are volatile, so a reader that finds a handle sees the title.
+	private volatile byte[][]			pages;		// Stored titles, a header then the characters
+	private int							page;		// Page being filled
+	private int							fill;		// Bytes used in that page
+	private volatile AtomicIntegerArray	table;		// Handles hashed by title, NONE when empty
+	private volatile int				count;		// Distinct titles stored
+	
+	public TitleStore() {
+		pages = new byte[4][];
+		page = -1;
+		fill = PAGE_SIZE;
+		table = newTable(1024);
+		count = 0;
+	} // end TitleStore
+	
+	/***
+	 * Store a title, or find it if it is already stored.
+	 * @param title - The title to store
+	 * @return Handle for the title, NONE for null
+	 */
+	public synchronized int add(String title) {
+		if (title == null)
+			return NONE;
+		if (title.length() > MAX_LENGTH)
+			title = title.substring(0, MAX_LENGTH);
+		
+		AtomicIntegerArray current = table;
+		int mask = current.length() - 1;
+		int slot = title.hashCode() & mask;
+		int handle;
+		
+		while ((handle = current.get(slot)) != NONE) {
+			if (equals(handle, title))
+				return handle;
+			slot = (slot + 1) & mask;
+		} // end while
+		
+		handle = write(title);
+		current.set(slot, handle);
+		count++;
+		
+		if (count * 2 > current.length())
+			rehash();
+		
+		return handle;
+	} // end add
+	
+	/***
+	 * Find the handle of a title without storing it.
+	 * @param title - The title to look for
+	 * @return Handle for the title, NONE if it is not stored
+	 */
+	public int find(String title) {
+		if (title == null || title.length() > MAX_LENGTH)
+			return NONE;
+		
+		AtomicIntegerArray current = table;
+		int mask = current.length() - 1;
+		int slot = title.hashCode() & mask;
+		int handle;
+		
+		while ((handle = current.get(slot)) != NONE) {
+			if (equals(handle, title))
+				return handle;
+			slot = (slot + 1) & mask;
+		} // end while
+		
+		return NONE;
+	} // end find
+	
+	@Override
+	public String get(int handle) {
+		if (handle == NONE)
+			return null;
+		
+		byte[] page = pages[handle >>> PAGE_BITS];
+		int offset = handle & (PAGE_SIZE - 1);
+		int header = ((page[offset] & 0xFF) << 8) | (page[offset + 1] & 0xFF);
+		int length = header & MAX_LENGTH;
+		char[] chars = new char[length];
+		
+		offset += 2;
+		if ((header & WIDE) == 0) {
+			for (int i = 0; i < length; i++)
+				chars[i] = (char)(page[offset + i] & 0xFF);
+		}
+		else {
+			for (int i = 0; i < length; i++, offset += 2)
+				chars[i] = (char)(((page[offset] & 0xFF) << 8) | (page[offset + 1] & 0xFF));
+		} // end else
+		
+		return new String(chars);
+	} // end get
+	
+	/***
+	 * Number of distinct titles stored.
+	 */
+	public int size() {
+		return count;
+	} // end size
+	
+	/***
+	 * Bytes taken by the stored titles, not counting the unused end of the last page.
+	 */
+	public synchronized long bytesUsed() {
+		return page < 0 ? 0 : (long)page * PAGE_SIZE + fill;
+	} // end bytesUsed
+	
+	/***
+	 * Write the stored titles so they can be read back as SnapshotTitles.
+	 * Every page but the last is written whole, so the handles stay the same.
+	 * @param out - Where to write them
+	 * @throws IOException if the titles could not be written
+	 */
+	public synchronized void writeTo(DataOutput out) throws IOException {
+		for (int p = 0; p <= page; p++)
+			out.write(pages[p], 0, (p < page) ? PAGE_SIZE : fill);
+	} // end writeTo
+	
+	// Copy a title into the pages, starting a new page if it does not fit
+	private int write(String title) {
+		int length = title.length();
+		boolean wide = false;
+		
+		for (int i = 0; i < length && !wide; i++)
+			wide = title.charAt(i) > 0xFF;
+		
+		int needed = 2 + (wide ? length * 2 : length);
+		byte[][] current = pages;
+		
+		if (fill + needed > PAGE_SIZE) {
+			if (++page == current.length) {
+				byte[][] bigger = new byte[current.length * 2][];
+				System.arraycopy(current, 0, bigger, 0, current.length);
+				current = bigger;
+			}
+			current[page] = new byte[PAGE_SIZE];
+			pages = current;
+			fill = 0;
+		} // end if
+		
+		byte[] data = current[page];
+		int handle = (page << PAGE_BITS) | fill;
+		int header = length | (wide ? WIDE : 0);
+		
+		data[fill++] = (byte)(header >>> 8);
+		data[fill++] = (byte)header;
+		for (int i = 0; i < length; i++) {
+			char c = title.charAt(i);
+			if (wide)
+				data[fill++] = (byte)(c >>> 8);
+			data[fill++] = (byte)c;
+		} // end for
+		
+		return handle;
+	} // end write
+	
+	// Check if a stored title is the same as the given one
+	private boolean equals(int handle, String title) {
+		byte[] page = pages[handle >>> PAGE_BITS];
+		int offset = handle & (PAGE_SIZE - 1);
+		int header = ((page[offset] & 0xFF) << 8) | (page[offset + 1] & 0xFF);
+		int length = title.length();
+		
+		if ((header & MAX_LENGTH) != length)
+			return false;
+		
+		offset += 2;
+		if ((header & WIDE) == 0) {
+			for (int i = 0; i < length; i++) {
+				if (title.charAt(i) != (char)(page[offset + i] & 0xFF))
+					return false;
+			}
+		}
+		else {
+			for (int i = 0; i < length; i++, offset += 2) {
+				if (title.charAt(i) != (char)(((page[offset] & 0xFF) << 8) | (page[offset + 1] & 0xFF)))
+					return false;
+			}
+		} // end else
+		
+		return true;
+	} // end equals
+	
+	// Double the hash table, the hashes are worked out again from the stored titles.
+	// Readers keep using the old table until the new one is complete.
+	private void rehash() {
+		AtomicIntegerArray old = table;
+		AtomicIntegerArray bigger = newTable(old.length() * 2);
+		int mask = bigger.length() - 1;
+		
+		for (int i = 0; i < old.length(); i++) {
+			int handle = old.get(i);
+			if (handle == NONE)
+				continue;
+			
+			int slot = get(handle).hashCode() & mask;
+			while (bigger.get(slot) != NONE)
+				slot = (slot + 1) & mask;
+			bigger.set(slot, handle);
+		} // end for
+		
+		table = bigger;
+	} // end rehash
+	
+	private static AtomicIntegerArray newTable(int length) {
+		AtomicIntegerArray result = new AtomicIntegerArray(length);
+		
+		for (int i = 0; i < length; i++)
+			result.set(i, NONE);
+		
+		return result;
+	} // end newTable
+	
+} // end class TitleStore
@@ -0,0 +1,146 @@
+import java.util.Arrays;
+
+/***
+ * TitleTiers - Exact lookups of the normalized titles of each anime, one table for
+ * each title type. A name is looked up as a main title first, then as an official
+ * title, then as a short title, and the first table that has it gives the result.
+ * Most names taken from well named files are found with a single lookup.
+ * 
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class TitleTiers {
+	/*** CONSTANTS ***/
+	public static final int			MAIN		=	0;			// Tables in the order they are looked in
+	public static final int			OFFICIAL	=	1;
+	public static final int			SHORT		=	2;
+	
+	private static final AnimeTitle[]	NONE	=	new AnimeTitle[0];
+	
+	/*** CLASS DATA MEMBERS ***/
+	// The tables are keyed by the handle of the normalized title in a store of their own,
+	// which goes when the tables do. A title of one anime maps to the AnimeTitle, a title
+	// shared by several to an AnimeTitle[].
+	private TitleStore				keys;			// Normalized titles
+	private IntHashMap<Object>		mainTitles;		// Anime by normalized main title
+	private IntHashMap<Object>		officialTitles;	// Anime by normalized official title
+	private IntHashMap<Object>		shortTitles;	// Anime by normalized short title
+	
+	/***
+	 * Build the tables for a list of anime.
+	 * @param list - The anime to look up, results are returned in this order
+	 */
+	public TitleTiers(AnimeTitle[] list) {
+		mainTitles = new IntHashMap<Object>(list.length);
+		officialTitles = new IntHashMap<Object>(list.length);
+		shortTitles = new IntHashMap<Object>(list.length / 2);
+		keys = new TitleStore();
+		
+		for (AnimeTitle anime : list) {
+			char[] text = anime.getKeys();
+			int official = anime.officialTitleCount();
+			int start = 0;
+			int title = 0;		// Which title of the anime, the main title comes first
+			
+			for (int i = 0; i <= text.length; i++) {
+				if (i < text.length && text[i] != TitleMatcher.SEPARATOR)
+					continue;
+				
+				// The normalized titles are stored once and looked up by handle
+				String name = new String(text, start, i - start).trim();
+				if (name.length() > 0) {
+					int key = keys.add(name);
+					
+					if (title == 0)
+						add(mainTitles, key, anime);
+					else if (title <= official)
+						add(officialTitles, key, anime);
+					else
+						add(shortTitles, key, anime);
+				} // end if
+				
+				title++;
+				start = i + 1;
+			} // end for
+		} // end for
+	} // end TitleTiers
+	
+	/***
+	 * Find the anime with a title that is exactly the given name, ignoring case,
+	 * accents, character width and surrounding spaces.
+	 * @param name - The name to look up
+	 * @return The anime of the first title type with a match, null if no title matched
+	 */
+	public AnimeTitles search(String name) {
+		String key = TitleMatcher.normalize(name).trim();
+		
+		for (int tier = MAIN; tier <= SHORT; tier++) {
+			AnimeTitle[] found = find(key, tier);
+			
+			if (found.length > 0) {
+				AnimeTitles results = new AnimeTitles(found.length);
+				for (AnimeTitle temp : found)
+					results.add(temp);
+				return results;
+			} // end if
+		} // end for
+		
+		return null;
+	} // end search
+	
+	/***
+	 * Find the anime with a title of one type that is exactly the given name.
+	 * @param key - The name, already normalized and trimmed
+	 * @param tier - MAIN, OFFICIAL or SHORT
+	 * @return The anime in list order, empty if none has the title. Can be the array in
+	 * the table, so it must not be changed.
+	 */
+	public AnimeTitle[] find(String key, int tier) {
+		int handle = keys.find(key);
+		if (handle == TitleStore.NONE)
+			return NONE;
+		
+		Object found = ((tier == MAIN) ? mainTitles : (tier == OFFICIAL) ? officialTitles : shortTitles).get(handle);
+		if (found == null)
+			return NONE;
+		if (found instanceof AnimeTitle)
+			return new AnimeTitle[] { (AnimeTitle)found };
+		
+		return (AnimeTitle[])found;
+	} // end find
+	
+	// Add an anime to the entry for a title, once even if it has the title more than once
+	private static void add(IntHashMap<Object> table, int key, AnimeTitle anime) {
+		Object found = table.get(key);
+		
+		if (found == null) {
+			table.put(key, anime);
+		}
+		else if (found instanceof AnimeTitle) {
+			if (found != anime)
+				table.put(key, new AnimeTitle[] { (AnimeTitle)found, anime });
+		}
+		else {
+			AnimeTitle[] shared = (AnimeTitle[])found;
+			
+			if (shared[shared.length - 1] != anime) {
+				shared = Arrays.copyOf(shared, shared.length + 1);
+				shared[shared.length - 1] = anime;
+				table.put(key, shared);
+			}
+		} // end else
+	} // end add
+	
+} // end class TitleTiers
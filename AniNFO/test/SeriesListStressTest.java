@@ -0,0 +1,183 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * SeriesListStressTest - Fills in one SeriesList from several threads while others
+ * read it, then checks that every aid kept one series, that readers never saw a
+ * half added series or episode, and that the list still writes and reads back.
+ * Run it with the classes in src on the class path, it exits with 1 if a check fails.
+ *
+ * Copyright (C) 2011  Chris Workman
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class SeriesListStressTest {
+	/*** CONSTANTS ***/
+	private static final int		AIDS		=	2000;		// Anime the writers pick from
+	private static final int		EPISODES	=	50;			// Episode numbers the writers pick from
+	private static final int		WRITERS		=	8;			// Threads adding series and episodes
+	private static final int		READERS		=	4;			// Threads looking them up meanwhile
+	private static final int		ROUNDS		=	40000;		// Adds done by each writer
+
+	/*** CLASS DATA MEMBERS ***/
+	private static final SeriesList		list = new SeriesList();
+	private static final AtomicInteger	failures = new AtomicInteger();
+	private static final AtomicBoolean	stop = new AtomicBoolean();
+
+	public static void main(String[] args) throws Exception {
+		final CountDownLatch done = new CountDownLatch(WRITERS);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+
+		for (int w = 0; w < WRITERS; w++) {
+			final int seed = w;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					write(new Random(seed));
+					done.countDown();
+				}
+			});
+		} // end for
+		for (int r = 0; r < READERS; r++) {
+			final int seed = 100 + r;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					read(new Random(seed));
+				}
+			});
+		} // end for
+
+		long start = System.nanoTime();
+		for (Thread temp : threads)
+			temp.start();
+		done.await();
+		stop.set(true);
+		for (Thread temp : threads)
+			temp.join();
+
+		int series = 0;
+		for (int aid = 0; aid < AIDS; aid++) {
+			SeriesEntry temp = list.getSeries(aid);
+			if (temp == null)
+				continue;
+
+			series++;
+			for (int ep = 1; ep <= EPISODES; ep++) {
+				EpisodeEntry found = temp.getEpisodes().getEpisode(ep);
+				if (found != null && found.getEID() != eid(aid, EpisodeEntry.REGULAR, ep))
+					fail("episode " + ep + " of " + aid + " has eid " + found.getEID());
+			} // end for
+		} // end for
+
+		if (list.size() != series || list.toArray().length != series)
+			fail("size " + list.size() + " and list " + list.toArray().length + " for " + series + " series");
+
+		checkRoundTrip();
+
+		System.out.println(series + " series in " + (System.nanoTime() - start) / 1000000 + " ms, "
+				+ failures.get() + " failures");
+		if (failures.get() > 0)
+			System.exit(1);
+	} // end main
+
+	// Add series and episodes at random, with no lock around the lookup and the add
+	private static void write(Random random) {
+		for (int n = 0; n < ROUNDS; n++) {
+			int aid = random.nextInt(AIDS);
+			int ep = 1 + random.nextInt(EPISODES);
+			char type = (random.nextInt(5) == 0) ? 'S' : EpisodeEntry.REGULAR;
+			SeriesEntry series = list.getSeries(aid);
+
+			if (series == null) {
+				SeriesEntry fetched = new SeriesEntry("T" + aid, aid);
+				fetched.addGenre("g" + (aid % 5));
+				fetched.setPlot("p" + aid);
+
+				// Of two threads fetching the same series only one copy is kept
+				series = list.addSeriesIfAbsent(fetched);
+				if (list.getSeries(aid) != series)
+					fail("series " + aid + " was not the one kept");
+			} // end if
+
+			if (list.getEpisode(aid, type, ep) == null) {
+				EpisodeEntry episode = new EpisodeEntry(eid(aid, type, ep));
+				episode.setEpno(EpisodeEntry.formatEpno(type, ep));
+				episode.setTitle(aid + "/" + type + ep);
+				series.addEpisode(episode);
+			} // end if
+
+			series.addGenre("x" + (n % 3));
+		} // end for
+	} // end write
+
+	// Look up series and episodes until the writers are done
+	private static void read(Random random) {
+		while (!stop.get()) {
+			int aid = random.nextInt(AIDS);
+			SeriesEntry series = list.getSeries(aid);
+
+			if (series == null)
+				continue;
+			if (series.getAID() != aid || series.getGenre() == null)
+				fail("series " + aid + " was seen half added");
+
+			int ep = 1 + random.nextInt(EPISODES);
+			char type = random.nextBoolean() ? 'S' : EpisodeEntry.REGULAR;
+			EpisodeEntry episode = list.getEpisode(aid, type, ep);
+
+			if (episode != null && (episode.getEpno() != ep || episode.getType() != type
+					|| episode.getEID() != eid(aid, type, ep) || series.getEpisodes().getEpisodeByEID(episode.getEID()) == null))
+				fail("episode " + type + ep + " of " + aid + " was seen half added");
+		} // end while
+	} // end read
+
+	// Write the list out and read it back, as the cache does
+	private static void checkRoundTrip() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(list);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		SeriesList copy = (SeriesList)in.readObject();
+		in.close();
+
+		if (copy.size() != list.size())
+			fail("read back " + copy.size() + " series of " + list.size());
+
+		for (SeriesEntry temp : list.toArray()) {
+			SeriesEntry back = copy.getSeries(temp.getAID());
+			if (back == null || back.getEpisodes().size() != temp.getEpisodes().size())
+				fail("series " + temp.getAID() + " did not read back");
+		} // end for
+	} // end checkRoundTrip
+
+	private static int eid(int aid, char type, int ep) {
+		return aid * 1000 + ((type == EpisodeEntry.REGULAR) ? 0 : 500) + ep;
+	} // end eid
+
+	private static void fail(String message) {
+		if (failures.getAndIncrement() < 10)
+			System.err.println(message);
+	} // end fail
+
+} // end class SeriesListStressTest